@@ -0,0 +1,73 @@
+package com.example.users.controller;
+
+import com.example.users.dto.ProfileRequest;
+import com.example.users.dto.ProfileResponse;
+import com.example.users.model.Profile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request/response mapping done by ProfileController on every create, update and read.
+ * ageFrom parses the request's dob and works out the age in years as the controller does;
+ * isoAge is the same computation inline, as a baseline for the helper calls around it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileMappingBenchmark {
+
+    private ProfileRequest request;
+    private Profile profile;
+
+    @Setup
+    public void setUp() {
+        request = new ProfileRequest();
+        request.setName("Jane Doe");
+        request.setEmail("jane.doe@example.com");
+        request.setDob("1990-04-17");
+        request.setSex("Female");
+        request.setPassword("secret");
+        request.setPhones(List.of("+1 555 0100", "+1 555 0101"));
+        request.setAddresses(List.of("1 First Street, Springfield", "2 Second Avenue, Shelbyville"));
+        profile = ProfileController.convertToEntity(request);
+        profile.setId(42L);
+    }
+
+    @Benchmark
+    public Profile convertToEntity() {
+        return ProfileController.convertToEntity(request);
+    }
+
+    @Benchmark
+    public ProfileResponse convertToResponse() {
+        return ProfileController.convertToResponse(profile);
+    }
+
+    @Benchmark
+    public Integer ageFrom() {
+        return ProfileController.ageFrom(ProfileController.dobFrom(request.getDob()));
+    }
+
+    @Benchmark
+    public int isoAge() {
+        return Period.between(LocalDate.parse(request.getDob(), DateTimeFormatter.ISO_LOCAL_DATE), LocalDate.now())
+                .getYears();
+    }
+}
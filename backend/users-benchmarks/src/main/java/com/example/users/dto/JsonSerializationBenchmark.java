@@ -0,0 +1,73 @@
+package com.example.users.dto;
+
+import com.example.users.model.Profile;
+import com.example.users.model.ProfileHistory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the response bodies, with the ObjectMapper configured as in
+ * ApplicationConfig. History entities are serialized the way the API does it, through
+ * ProfileHistoryResponse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ProfileResponse response;
+    private ProfileHistory history;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        response = new ProfileResponse();
+        response.setId(42L);
+        response.setName("Jane Doe");
+        response.setEmail("jane.doe@example.com");
+        response.setDob("1990-04-17");
+        response.setAge(36);
+        response.setSex("Female");
+        response.setPassword("********");
+        response.setPhones(List.of("+1 555 0100", "+1 555 0101"));
+        response.setAddresses(List.of("1 First Street, Springfield", "2 Second Avenue, Shelbyville"));
+
+        Profile profile = new Profile();
+        profile.setId(42L);
+        history = new ProfileHistory(profile, "{\"name\":\"Jane Roe\",\"phones\":[\"+1 555 0100\"]}", false, 7);
+        history.setId(1000L);
+        history.setUpdatedAt(LocalDate.of(2026, 1, 15));
+    }
+
+    @Benchmark
+    public String profileResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String profileHistory() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(ProfileHistoryResponse.from(history));
+    }
+}
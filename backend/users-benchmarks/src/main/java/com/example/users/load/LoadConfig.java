@@ -0,0 +1,92 @@
+package com.example.users.load;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test settings, parsed from --key=value arguments. Arguments of the form
+ * --app.some.property=value are passed to the embedded service as some.property=value.
+ *
+ * @param target          base URL of a running service, or null to start one on H2 in-process
+ * @param rate            mean arrivals per second, across all scenarios
+ * @param poisson         exponential gaps between arrivals instead of a fixed interval
+ * @param mix             relative weight of each scenario
+ * @param maxInFlight     arrivals beyond this many outstanding requests count as errors
+ * @param tolerance       allowed relative p99 regression against the baseline
+ * @param maxErrorRate    allowed share of failed requests per scenario
+ */
+public record LoadConfig(String target, double rate, boolean poisson, Duration warmup, Duration duration,
+                         Map<Scenario, Integer> mix, int seedProfiles, int maxInFlight, Path report,
+                         Path baseline, double tolerance, double maxErrorRate, Map<String, String> appProperties) {
+
+    static final String DEFAULT_MIX = "read=50,update=15,history=10,login=10,signup=10,delete=5";
+
+    public static LoadConfig parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> appProperties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.isBlank()) {
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+            String key = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            if (key.startsWith("app.")) {
+                appProperties.put(key.substring(4), value);
+            } else {
+                options.put(key, value);
+            }
+        }
+        String baseline = options.remove("baseline");
+        LoadConfig config = new LoadConfig(
+                options.remove("target"),
+                Double.parseDouble(take(options, "rate", "100")),
+                "poisson".equals(take(options, "arrivals", "poisson")),
+                Duration.parse(take(options, "warmup", "PT10S")),
+                Duration.parse(take(options, "duration", "PT60S")),
+                parseMix(take(options, "mix", DEFAULT_MIX)),
+                Integer.parseInt(take(options, "seed", "100")),
+                Integer.parseInt(take(options, "max-in-flight", "5000")),
+                Path.of(take(options, "report", "target/load/load-report.json")),
+                baseline == null ? null : Path.of(baseline),
+                Double.parseDouble(take(options, "tolerance", "0.2")),
+                Double.parseDouble(take(options, "max-error-rate", "0.01")),
+                appProperties);
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + options.keySet());
+        }
+        if (config.rate() <= 0 || config.seedProfiles() < 1) {
+            throw new IllegalArgumentException("--rate and --seed must be positive");
+        }
+        return config;
+    }
+
+    private static String take(Map<String, String> options, String key, String defaultValue) {
+        String value = options.remove(key);
+        return value == null ? defaultValue : value;
+    }
+
+    static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected scenario=weight in --mix, got: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Scenario.fromKey(parts[0]), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("--mix has no scenario with a positive weight");
+        }
+        return weights;
+    }
+}
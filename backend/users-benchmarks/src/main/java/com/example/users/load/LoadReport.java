@@ -0,0 +1,114 @@
+package com.example.users.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-scenario results of one load test run, as printed and as stored in the JSON report
+ * that later runs use as their baseline.
+ */
+public record LoadReport(String target, double rate, double durationSeconds, List<ScenarioResult> scenarios) {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * @param throughput requests completed per second of the measurement window
+     */
+    public record ScenarioResult(String scenario, long requests, long errors, long conflicts, long skipped,
+                                 double throughput, double p50Ms, double p90Ms, double p99Ms, double p999Ms,
+                                 double maxMs) {
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    static LoadReport of(LoadConfig config, String target, Map<Scenario, LoadRunner.ScenarioStats> stats) {
+        double seconds = config.duration().toMillis() / 1000.0;
+        List<ScenarioResult> results = new ArrayList<>();
+        stats.forEach((scenario, scenarioStats) -> {
+            Histogram latencies = scenarioStats.latencies;
+            long recorded = latencies.getTotalCount();
+            // Arrivals dropped because the client was saturated are errors without a latency
+            long requests = recorded + scenarioStats.dropped.sum();
+            results.add(new ScenarioResult(scenario.key(), requests, scenarioStats.errors.sum(),
+                    scenarioStats.conflicts.sum(), scenarioStats.skipped.sum(), recorded / seconds,
+                    millis(latencies, 50), millis(latencies, 90), millis(latencies, 99), millis(latencies, 99.9),
+                    latencies.getMaxValue() / MICROS_PER_MILLI));
+        });
+        return new LoadReport(target, config.rate(), seconds, results);
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getTotalCount() == 0 ? 0 : latencies.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%nLoad test against %s: %.0f req/s offered for %.0fs%n", target, rate, durationSeconds);
+        out.printf("%-8s %9s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "scenario", "requests", "req/s", "errors", "conflicts", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (ScenarioResult result : scenarios) {
+            out.printf("%-8s %9d %9.1f %7d %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    result.scenario(), result.requests(), result.throughput(), result.errors(), result.conflicts(),
+                    result.p50Ms(), result.p90Ms(), result.p99Ms(), result.p999Ms(), result.maxMs());
+        }
+    }
+
+    /**
+     * Writes the JSON report and, next to it, one HdrHistogram percentile distribution
+     * (.hgrm, in milliseconds) per scenario.
+     */
+    void write(Path report, Map<Scenario, LoadRunner.ScenarioStats> stats, ObjectMapper objectMapper) throws IOException {
+        Path directory = report.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), this);
+        for (Map.Entry<Scenario, LoadRunner.ScenarioStats> entry : stats.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey().key() + ".hgrm")))) {
+                entry.getValue().latencies.outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+    }
+
+    static LoadReport read(Path report, ObjectMapper objectMapper) throws IOException {
+        return objectMapper.readValue(report.toFile(), LoadReport.class);
+    }
+
+    /**
+     * Throughput is not compared: in an open model it is set by the offered rate, and a server
+     * that cannot keep up shows as higher percentiles or as arrivals dropped as errors.
+     *
+     * @return why this run fails the release gate; empty when it passes
+     */
+    List<String> gate(LoadReport baseline, double tolerance, double maxErrorRate) {
+        List<String> failures = new ArrayList<>();
+        if (baseline != null && baseline.rate() != rate) {
+            failures.add(String.format("baseline was recorded at %.0f req/s, this run offered %.0f req/s",
+                    baseline.rate(), rate));
+            return failures;
+        }
+        for (ScenarioResult result : scenarios) {
+            if (result.errorRate() > maxErrorRate) {
+                failures.add(String.format("%s: error rate %.2f%% exceeds %.2f%%",
+                        result.scenario(), result.errorRate() * 100, maxErrorRate * 100));
+            }
+            Optional<ScenarioResult> previous = baseline == null ? Optional.empty() : baseline.scenarios().stream()
+                    .filter(candidate -> candidate.scenario().equals(result.scenario()) && candidate.requests() > 0)
+                    .findFirst();
+            if (previous.isPresent() && result.p99Ms() > previous.get().p99Ms() * (1 + tolerance)) {
+                failures.add(String.format("%s: p99 %.2f ms is more than %.0f%% above the baseline %.2f ms",
+                        result.scenario(), result.p99Ms(), tolerance * 100, previous.get().p99Ms()));
+            }
+        }
+        return failures;
+    }
+}
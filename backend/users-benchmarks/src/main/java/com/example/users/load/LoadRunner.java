@@ -0,0 +1,256 @@
+package com.example.users.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator: requests are started on a fixed (or Poisson) arrival schedule
+ * whether or not earlier ones have finished, and each latency is measured from the time the
+ * request was scheduled to start. A slow server therefore shows up in the percentiles
+ * instead of silently lowering the request rate (no coordinated omission).
+ */
+class LoadRunner {
+
+    static final String PASSWORD = "load-test-password";
+    private static final int SEED_BATCH = 100;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /** Latencies in microseconds plus outcome counters of one scenario. */
+    static final class ScenarioStats {
+        final Histogram latencies = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+    }
+
+    private record SeededProfile(long id, String email) {
+    }
+
+    private final LoadConfig config;
+    private final URI base;
+    private final HttpClient http;
+    private final ObjectMapper objectMapper;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final List<SeededProfile> seeded = new ArrayList<>();
+    // Profiles created by the signup scenario; delete only removes these, so the seeded set stays intact
+    private final ConcurrentLinkedDeque<Long> signedUp = new ConcurrentLinkedDeque<>();
+    private final AtomicLong signups = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Scenario, ScenarioStats> stats = new EnumMap<>(Scenario.class);
+
+    LoadRunner(LoadConfig config, URI base, ObjectMapper objectMapper) {
+        this.config = config;
+        this.base = base;
+        this.objectMapper = objectMapper;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+        config.mix().keySet().forEach(scenario -> stats.put(scenario, new ScenarioStats()));
+    }
+
+    /**
+     * Creates the profiles that login, read, update and history pick from, through the batch endpoint.
+     */
+    void seed() throws IOException, InterruptedException {
+        for (int from = 0; from < config.seedProfiles(); from += SEED_BATCH) {
+            ArrayNode batch = objectMapper.createArrayNode();
+            List<String> emails = new ArrayList<>();
+            for (int i = from; i < Math.min(from + SEED_BATCH, config.seedProfiles()); i++) {
+                String email = "load-" + runId + "-seed-" + i + "@example.com";
+                emails.add(email);
+                batch.add(profileJson("Seed " + i, email));
+            }
+            HttpResponse<String> response = http.send(json("POST", "/api/profiles/batch", batch),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+            }
+            for (JsonNode result : objectMapper.readTree(response.body())) {
+                if ("CREATED".equals(result.path("status").asText())) {
+                    seeded.add(new SeededProfile(result.path("id").asLong(), emails.get(result.path("index").asInt())));
+                }
+            }
+        }
+        if (seeded.isEmpty()) {
+            throw new IllegalStateException("Seeding created no profiles");
+        }
+    }
+
+    /**
+     * Runs the warm-up and measurement windows and waits for every started request to finish.
+     * Only requests scheduled inside the measurement window are recorded.
+     */
+    Map<Scenario, ScenarioStats> run() {
+        List<Scenario> scenarios = new ArrayList<>(config.mix().keySet());
+        int[] cumulativeWeights = new int[scenarios.size()];
+        int total = 0;
+        for (int i = 0; i < scenarios.size(); i++) {
+            total += config.mix().get(scenarios.get(i));
+            cumulativeWeights[i] = total;
+        }
+
+        Random random = new Random();
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / config.rate();
+        long start = System.nanoTime();
+        long measureFrom = start + config.warmup().toNanos();
+        long measureUntil = measureFrom + config.duration().toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            double next = start;
+            while (next < measureUntil) {
+                long intendedStart = (long) next;
+                long now;
+                while ((now = System.nanoTime()) < intendedStart) {
+                    LockSupport.parkNanos(intendedStart - now);
+                }
+                int pick = random.nextInt(total);
+                int index = 0;
+                while (cumulativeWeights[index] <= pick) {
+                    index++;
+                }
+                Scenario scenario = scenarios.get(index);
+                boolean measured = intendedStart >= measureFrom;
+                if (inFlight.incrementAndGet() > config.maxInFlight()) {
+                    // The client is saturated; count the arrival as failed rather than delay the schedule
+                    inFlight.decrementAndGet();
+                    if (measured) {
+                        stats.get(scenario).errors.increment();
+                        stats.get(scenario).dropped.increment();
+                    }
+                } else {
+                    clients.submit(() -> {
+                        try {
+                            execute(scenario, intendedStart, measured);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    });
+                }
+                next += config.poisson() ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+            }
+        }
+        return stats;
+    }
+
+    private void execute(Scenario scenario, long intendedStart, boolean measured) {
+        ScenarioStats scenarioStats = stats.get(scenario);
+        SeededProfile profile = seeded.get(ThreadLocalRandom.current().nextInt(seeded.size()));
+        HttpRequest request;
+        switch (scenario) {
+            case SIGNUP -> {
+                long n = signups.incrementAndGet();
+                request = json("POST", "/api/profiles",
+                        profileJson("Signup " + n, "load-" + runId + "-signup-" + n + "@example.com"));
+            }
+            case LOGIN -> {
+                ObjectNode login = objectMapper.createObjectNode();
+                login.put("email", profile.email());
+                login.put("password", PASSWORD);
+                request = json("POST", "/api/profiles/login", login);
+            }
+            case READ -> request = HttpRequest.newBuilder(base.resolve("/api/profiles/" + profile.id()))
+                    .timeout(REQUEST_TIMEOUT).GET().build();
+            case UPDATE -> {
+                ObjectNode patch = objectMapper.createObjectNode();
+                patch.put("name", "Updated " + ThreadLocalRandom.current().nextInt(1_000_000));
+                request = json("PATCH", "/api/profiles/" + profile.id(), patch);
+            }
+            case HISTORY -> request = HttpRequest.newBuilder(base.resolve("/api/profiles/" + profile.id() + "/history?limit=20"))
+                    .timeout(REQUEST_TIMEOUT).GET().build();
+            case DELETE -> {
+                Long id = signedUp.pollFirst();
+                if (id == null) {
+                    if (measured) {
+                        scenarioStats.skipped.increment();
+                    }
+                    return;
+                }
+                request = HttpRequest.newBuilder(base.resolve("/api/profiles/" + id))
+                        .timeout(REQUEST_TIMEOUT).DELETE().build();
+            }
+            default -> throw new IllegalStateException("Unhandled scenario " + scenario);
+        }
+
+        int status;
+        String body = null;
+        try {
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            body = response.body();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+
+        if (scenario == Scenario.SIGNUP && status == 201) {
+            try {
+                signedUp.add(objectMapper.readTree(body).path("id").asLong());
+            } catch (IOException e) {
+                // the profile exists; it just will not be picked for deletion
+            }
+        }
+        if (!measured) {
+            return;
+        }
+        scenarioStats.latencies.recordValue(latencyMicros);
+        if (scenario == Scenario.UPDATE && status == 409) {
+            // Two updates of the same profile raced; expected under load, not a failure
+            scenarioStats.conflicts.increment();
+        } else if (status < 200 || status >= 300) {
+            scenarioStats.errors.increment();
+        }
+    }
+
+    private ObjectNode profileJson(String name, String email) {
+        ObjectNode profile = objectMapper.createObjectNode();
+        profile.put("name", name);
+        profile.put("email", email);
+        profile.put("dob", "1990-01-01");
+        profile.put("sex", "Female");
+        profile.put("password", PASSWORD);
+        profile.putArray("phones").add("+1555" + Math.abs(email.hashCode() % 1_000_000));
+        profile.putArray("addresses").add("1 Load Test Street");
+        return profile;
+    }
+
+    private HttpRequest json(String method, String path, JsonNode body) {
+        try {
+            return HttpRequest.newBuilder(base.resolve(path))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.users.load;
+
+import com.example.users.UsersServiceApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a weighted mix of signup, login, read, update, history and delete requests at a
+ * fixed arrival rate and reports throughput and latency percentiles per scenario. Without
+ * --target the service is started in-process on the H2 profile.
+ * <p>
+ * Exits with status 1 when a scenario's error rate exceeds --max-error-rate or, given a
+ * --baseline report from an earlier run at the same rate, when its p99 regressed by more
+ * than --tolerance, so a release pipeline can fail on it.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args);
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+        List<String> failures;
+        try (ConfigurableApplicationContext embedded = config.target() == null ? startEmbedded(config) : null) {
+            String target = embedded == null
+                    ? config.target()
+                    : "http://localhost:" + embedded.getEnvironment().getProperty("local.server.port");
+            LoadRunner runner = new LoadRunner(config, URI.create(target), objectMapper);
+            runner.seed();
+            Map<Scenario, LoadRunner.ScenarioStats> stats = runner.run();
+
+            LoadReport report = LoadReport.of(config, target, stats);
+            report.print(System.out);
+            report.write(config.report(), stats, objectMapper);
+            System.out.println("Report written to " + config.report().toAbsolutePath());
+
+            LoadReport baseline = config.baseline() == null ? null : LoadReport.read(config.baseline(), objectMapper);
+            failures = report.gate(baseline, config.tolerance(), config.maxErrorRate());
+        }
+        if (!failures.isEmpty()) {
+            System.out.println("Load test gate failed:");
+            failures.forEach(failure -> System.out.println("  " + failure));
+            System.exit(1);
+        }
+        System.out.println("Load test gate passed");
+    }
+
+    private static ConfigurableApplicationContext startEmbedded(LoadConfig config) {
+        // Command-line arguments, so they take precedence over application.yml
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        Map<String, String> appProperties = new LinkedHashMap<>(config.appProperties());
+        // All traffic comes from one address and logs in to the same seeded accounts; lift the
+        // login throttle unless the run sets it, or it would be measured instead of login
+        appProperties.putIfAbsent("users.login-throttle.account.burst", "1000000");
+        appProperties.putIfAbsent("users.login-throttle.client.burst", "1000000");
+        appProperties.forEach((key, value) -> args.add("--" + key + "=" + value));
+        return new SpringApplicationBuilder(UsersServiceApplication.class)
+                .profiles("h2")
+                .run(args.toArray(String[]::new));
+    }
+}
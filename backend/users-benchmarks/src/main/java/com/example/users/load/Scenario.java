@@ -0,0 +1,22 @@
+package com.example.users.load;
+
+import java.util.Locale;
+
+/**
+ * One user action the load test can issue. The names are the keys used in --mix.
+ */
+public enum Scenario {
+    SIGNUP, LOGIN, READ, UPDATE, HISTORY, DELETE;
+
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Scenario fromKey(String key) {
+        try {
+            return valueOf(key.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown scenario '" + key + "' in --mix");
+        }
+    }
+}
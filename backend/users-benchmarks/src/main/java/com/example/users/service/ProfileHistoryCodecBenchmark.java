@@ -0,0 +1,86 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON written into profile_history on every update: a snapshot of the profile before
+ * and after, encoded as a delta or, every checkpoint-interval-th update, in full. Also the
+ * reverse step used when an old version is rebuilt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileHistoryCodecBenchmark {
+
+    private ProfileHistoryCodec codec;
+    private Profile profile;
+    private Map<String, Object> before;
+    private Map<String, Object> after;
+    private String delta;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        codec = new ProfileHistoryCodec(objectMapper, 20);
+        profile = new Profile();
+        profile.setId(42L);
+        profile.setName("Jane Doe");
+        profile.setEmail("jane.doe@example.com");
+        profile.setDob(LocalDate.of(1990, 4, 17));
+        profile.setAge(36);
+        profile.setSex("Female");
+        profile.setPhones(new TreeSet<>(List.of("+1 555 0100", "+1 555 0101")));
+        profile.setAddresses(new TreeSet<>(List.of("1 First Street, Springfield")));
+        before = codec.snapshot(profile);
+        profile.setName("Jane Roe");
+        profile.getPhones().add("+1 555 0102");
+        after = codec.snapshot(profile);
+        delta = codec.encode(before, after, false);
+    }
+
+    @Benchmark
+    public Map<String, Object> snapshot() {
+        return codec.snapshot(profile);
+    }
+
+    @Benchmark
+    public String encodeDelta() {
+        return codec.encode(before, after, false);
+    }
+
+    @Benchmark
+    public String encodeCheckpoint() {
+        return codec.encode(before, after, true);
+    }
+
+    @Benchmark
+    public Map<String, Object> applyReverse() {
+        Map<String, Object> state = new LinkedHashMap<>(after);
+        codec.applyReverse(state, delta);
+        return state;
+    }
+}
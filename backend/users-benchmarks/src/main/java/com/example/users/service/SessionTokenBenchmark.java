@@ -0,0 +1,85 @@
+package com.example.users.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * What SessionTokenInterceptor pays per protected request, against PasswordMatchBenchmark's
+ * BCrypt check that clients used to repeat instead. verifyAfterRotation checks a token
+ * signed with the older of two configured keys; forged is a token whose signature does not
+ * match, which costs the same HMAC as a valid one. verifyOnVirtualThread checks the token on
+ * a new virtual thread, as a request is handled with spring.threads.virtual.enabled, so no
+ * per-thread state survives between checks; virtualThread is the cost of the thread alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionTokenBenchmark {
+
+    private SessionTokens sessionTokens;
+    private String token;
+    private String oldKeyToken;
+    private String forged;
+
+    @Setup
+    public void setUp() {
+        String oldKey = "k1:" + Base64.getEncoder().encodeToString("a".repeat(32).getBytes());
+        String newKey = "k2:" + Base64.getEncoder().encodeToString("b".repeat(32).getBytes());
+        oldKeyToken = new SessionTokens(oldKey, Duration.ofHours(1), new SimpleMeterRegistry()).issue(42L).token();
+        sessionTokens = new SessionTokens(newKey + "," + oldKey, Duration.ofHours(1), new SimpleMeterRegistry());
+        token = sessionTokens.issue(42L).token();
+        forged = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+    }
+
+    @Benchmark
+    public SessionTokens.Issued issue() {
+        return sessionTokens.issue(42L);
+    }
+
+    @Benchmark
+    public Optional<Long> verify() {
+        return sessionTokens.verify(token);
+    }
+
+    @Benchmark
+    public Optional<Long> verifyAfterRotation() {
+        return sessionTokens.verify(oldKeyToken);
+    }
+
+    @Benchmark
+    public Optional<Long> forged() {
+        return sessionTokens.verify(forged);
+    }
+
+    @Benchmark
+    public Optional<Long> verifyOnVirtualThread() throws InterruptedException {
+        AtomicReference<Optional<Long>> result = new AtomicReference<>();
+        Thread.ofVirtual().start(() -> result.set(sessionTokens.verify(token))).join();
+        return result.get();
+    }
+
+    @Benchmark
+    public Thread virtualThread() throws InterruptedException {
+        Thread thread = Thread.ofVirtual().start(() -> { });
+        thread.join();
+        return thread;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.users.config;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Makes springdoc's beans lazy, so the OpenAPI machinery is built on the first request to
+ * /api-docs or the Swagger UI rather than during every pod's start. Its controllers are
+ * still mapped at startup; MVC resolves a lazy handler bean when it is first called.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "users.startup.defer-springdoc", matchIfMissing = true)
+public class DeferredSpringdocConfig {
+
+    private static final String SPRINGDOC_PACKAGE = "org.springdoc.";
+
+    // Static, so it runs before the rest of this configuration's beans are created
+    @Bean
+    static BeanFactoryPostProcessor deferSpringdocBeans() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (fromSpringdoc(beanFactory, definition)) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    // Declared by a springdoc class, or by an @Bean method of a springdoc configuration
+    private static boolean fromSpringdoc(ConfigurableListableBeanFactory beanFactory, BeanDefinition definition) {
+        String className = definition.getBeanClassName();
+        if (className != null && className.startsWith(SPRINGDOC_PACKAGE)) {
+            return true;
+        }
+        String factoryBeanName = definition.getFactoryBeanName();
+        if (factoryBeanName == null || !beanFactory.containsBeanDefinition(factoryBeanName)) {
+            return false;
+        }
+        String factoryClassName = beanFactory.getBeanDefinition(factoryBeanName).getBeanClassName();
+        return factoryClassName != null && factoryClassName.startsWith(SPRINGDOC_PACKAGE);
+    }
+}
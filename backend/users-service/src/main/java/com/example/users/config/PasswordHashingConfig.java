@@ -0,0 +1,40 @@
+package com.example.users.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class PasswordHashingConfig {
+
+    /**
+     * BCrypt is CPU bound, so it gets its own pool sized to the cores instead of running on
+     * request threads. The queue is bounded and overflow is rejected (AbortPolicy) so a login
+     * burst fails fast rather than piling up. Queue depth, queue wait ("executor.idle") and
+     * hashing time ("executor.execution") are published under the "password-hashing" name.
+     * It stays a platform-thread pool when spring.threads.virtual.enabled is on; virtual
+     * threads would only remove the bound, not add cores.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService passwordHashingExecutor(
+            @Value("${users.password-hashing.threads:0}") int threads,
+            @Value("${users.password-hashing.queue-capacity:100}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "password-hashing");
+    }
+}
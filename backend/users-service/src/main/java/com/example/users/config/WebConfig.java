@@ -1,18 +1,33 @@
 package com.example.users.config;
 
+import com.example.users.controller.SessionTokenInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
+
+    private final SessionTokenInterceptor sessionTokenInterceptor;
+
+    public WebConfig(SessionTokenInterceptor sessionTokenInterceptor) {
+        this.sessionTokenInterceptor = sessionTokenInterceptor;
+    }
     
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/api/**")
                 .allowedOrigins("*")
-                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders("ETag")
                 .maxAge(3600);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // For every handler: it decides by the matched pattern, not by the raw path
+        registry.addInterceptor(sessionTokenInterceptor);
+    }
+}
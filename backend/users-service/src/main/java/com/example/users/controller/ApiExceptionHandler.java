@@ -0,0 +1,79 @@
+package com.example.users.controller;
+
+import com.example.users.util.HistoryIncompleteException;
+import com.example.users.util.LoginThrottledException;
+import com.example.users.util.PasswordHashingRejectedException;
+import com.example.users.util.ProfileVersionMismatchException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.time.format.DateTimeParseException;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<String> handlePasswordHashingRejected(PasswordHashingRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Server is busy. Please retry shortly.");
+    }
+
+    // Turned away by LoginThrottle before any lookup or hashing
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<String> handleLoginThrottled(LoginThrottledException e) {
+        long seconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds))
+                .body("Too many login attempts. Please retry in " + seconds + " seconds.");
+    }
+
+    // A history entry the version needs is missing, most likely not yet flushed by the history writer
+    @ExceptionHandler(HistoryIncompleteException.class)
+    public ResponseEntity<String> handleHistoryIncomplete(HistoryIncompleteException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("History for that version is still being written. Please retry shortly.");
+    }
+
+    // A dob that is not a yyyy-MM-dd date
+    @ExceptionHandler(DateTimeParseException.class)
+    public ResponseEntity<String> handleInvalidDate(DateTimeParseException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("Invalid date of birth: " + e.getParsedString() + " (expected yyyy-MM-dd)");
+    }
+
+    // The profile was deleted between the request's lookup and its update
+    @ExceptionHandler(EmptyResultDataAccessException.class)
+    public ResponseEntity<String> handleEmptyResult(EmptyResultDataAccessException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
+    }
+
+    // If-Match named a version that is no longer current; the response carries the current ETag
+    @ExceptionHandler(ProfileVersionMismatchException.class)
+    public ResponseEntity<String> handleVersionMismatch(ProfileVersionMismatchException e) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .eTag(ProfileController.etagOf(e.getProfileId(), e.getCurrentUpdateCount()))
+                .body("Profile has been modified. Reload it and retry.");
+    }
+
+    // Another update committed between this one's read and its write
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLockingFailure(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Profile was modified concurrently, nothing was saved. Reload it and retry.");
+    }
+
+    // A concurrent writer claimed a unique value (e.g. an email) between our check and the insert
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<String> handleDataIntegrityViolation(DataIntegrityViolationException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Conflicting write, nothing was saved. Please retry.");
+    }
+}
@@ -1,58 +1,224 @@
 package com.example.users.controller;
 
 import com.example.users.dto.LoginRequest;
+import com.example.users.dto.BatchItemResult;
 import com.example.users.dto.LoginResponse;
+import com.example.users.dto.ProfileBatchUpdateRequest;
+import com.example.users.dto.ProfileExportRecord;
+import com.example.users.dto.ProfileHistoryPageResponse;
+import com.example.users.dto.ProfileHistoryResponse;
+import com.example.users.dto.ProfilePageResponse;
+import com.example.users.dto.ProfilePatchRequest;
 import com.example.users.dto.ProfileRequest;
 import com.example.users.dto.ProfileResponse;
+import com.example.users.dto.ProfileStatsResponse;
 import com.example.users.model.Profile;
 import com.example.users.model.ProfileHistory;
+import com.example.users.service.LoginThrottle;
 import com.example.users.service.ProfileService;
+import com.example.users.service.SessionTokens;
+import com.example.users.util.ProfileVersionMismatchException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Period;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/profiles")
 @Tag(name = "Profiles", description = "Endpoints for profile management")
 public class ProfileController {
     
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
     @Autowired
     private ProfileService profileService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SessionTokens sessionTokens;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Value("${users.batch.max-size:1000}")
+    private int maxBatchSize;
+
     @GetMapping
-    @Operation(summary = "Get all profiles", description = "Retrieves all profiles")
-    public ResponseEntity<List<ProfileResponse>> getAllProfiles() {
-        List<Profile> profiles = profileService.getAllProfiles();
-        List<ProfileResponse> response = profiles.stream()
-                .map(this::convertToResponse)
+    @Operation(summary = "List profiles", description = "Retrieves profiles in id order, one keyset page at a time")
+    public ResponseEntity<ProfilePageResponse> getAllProfiles(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Fetch one extra row to learn whether another page exists without a count query
+        List<Profile> profiles = profileService.getProfilesAfter(after, pageSize + 1);
+        boolean hasMore = profiles.size() > pageSize;
+        List<ProfileResponse> items = profiles.stream()
+                .limit(pageSize)
+                .map(ProfileController::convertToResponse)
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+        Long nextCursor = hasMore ? items.get(items.size() - 1).getId() : null;
+        return ResponseEntity.ok(new ProfilePageResponse(items, pageSize, nextCursor));
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Search profiles", description = "Filters by name prefix, age range, sex and email domain; matches come in id order, one keyset page at a time")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Matching profiles"),
+        @ApiResponse(responseCode = "400", description = "Invalid age range")
+    })
+    public ResponseEntity<?> searchProfiles(
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) String sex,
+            @RequestParam(required = false) String emailDomain,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if ((minAge != null && minAge < 0) || (maxAge != null && maxAge < 0)
+                || (minAge != null && maxAge != null && minAge > maxAge)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid age range");
+        }
+        ProfileService.SearchCriteria criteria = new ProfileService.SearchCriteria(
+                blankToNull(name), minAge, maxAge, blankToNull(sex), blankToNull(emailDomain));
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<Profile> profiles = profileService.searchProfiles(criteria, after, pageSize + 1);
+        boolean hasMore = profiles.size() > pageSize;
+        List<ProfileResponse> items = profiles.stream()
+                .limit(pageSize)
+                .map(ProfileController::convertToResponse)
+                .collect(Collectors.toList());
+        Long nextCursor = hasMore ? items.get(items.size() - 1).getId() : null;
+        return ResponseEntity.ok(new ProfilePageResponse(items, pageSize, nextCursor));
+    }
+
+    @GetMapping("/stats")
+    @Operation(summary = "Profile statistics", description = "Counts profiles by sex and age group; served from aggregates "
+            + "kept up to date on every write and reconciled with the database periodically, so no profiles are read")
+    @ApiResponse(responseCode = "200", description = "Counts as of today")
+    public ResponseEntity<ProfileStatsResponse> getProfileStatistics() {
+        return ResponseEntity.ok(profileService.getStatistics());
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Stream all profiles", description = "Writes every profile as one JSON array while rows are read from the database cursor")
+    public ResponseEntity<StreamingResponseBody> streamAllProfiles() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                profileService.streamAllProfiles(profile -> {
+                    try {
+                        generator.writeObject(convertToResponse(profile));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Export all profiles", description = "Streams every profile as newline-delimited JSON in id order; "
+            + "include=phones,addresses,history embeds those collections, and the body is gzipped when the client accepts it")
+    public ResponseEntity<StreamingResponseBody> exportProfiles(
+            @RequestParam(required = false) List<String> include,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean includePhones = include != null && include.contains("phones");
+        boolean includeAddresses = include != null && include.contains("addresses");
+        boolean includeHistory = include != null && include.contains("history");
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        StreamingResponseBody body = responseStream -> {
+            // syncFlush so each flushed chunk reaches the client instead of waiting in the deflater
+            OutputStream outputStream = gzip ? new GZIPOutputStream(responseStream, true) : responseStream;
+            try (SequenceWriter writer = objectMapper.writer()
+                    .withRootValueSeparator("\n")
+                    .writeValues(outputStream)) {
+                int[] written = {0};
+                profileService.exportProfiles(includeHistory, (profile, history) -> {
+                    try {
+                        writer.write(convertToExportRecord(profile, includePhones, includeAddresses,
+                                includeHistory ? history : null));
+                        if (++written[0] % Profile.BATCH_SIZE == 0) {
+                            writer.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (written[0] > 0) {
+                    writer.flush();
+                    outputStream.write('\n');
+                }
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     @GetMapping("/{id}")
-    @Operation(summary = "Get profile by ID", description = "Retrieves profile information by ID")
+    @Operation(summary = "Get profile by ID", description = "Retrieves profile information by ID; "
+            + "the ETag names the profile version and If-None-Match with it is answered with 304")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Profile found"),
+        @ApiResponse(responseCode = "304", description = "Profile unchanged since the If-None-Match version"),
         @ApiResponse(responseCode = "404", description = "Profile not found")
     })
     public ResponseEntity<?> getProfileById(@PathVariable Long id) {
         Optional<Profile> profile = profileService.getProfileById(id);
         if (profile.isPresent()) {
-            return ResponseEntity.ok(convertToResponse(profile.get()));
+            // Spring answers a matching If-None-Match with 304 and no body
+            return versioned(ResponseEntity.ok(), profile.get())
+                    .cacheControl(CacheControl.noCache())
+                    .body(convertToResponse(profile.get()));
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
         }
@@ -67,7 +233,9 @@ public class ProfileController {
     public ResponseEntity<?> getProfileByEmail(@PathVariable String email) {
         Optional<Profile> profile = profileService.getProfileByEmail(email);
         if (profile.isPresent()) {
-            return ResponseEntity.ok(convertToResponse(profile.get()));
+            return versioned(ResponseEntity.ok(), profile.get())
+                    .cacheControl(CacheControl.noCache())
+                    .body(convertToResponse(profile.get()));
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
         }
@@ -77,9 +245,15 @@ public class ProfileController {
     @Operation(summary = "Create a new profile", description = "Creates a new profile")
     @ApiResponses({
         @ApiResponse(responseCode = "201", description = "Profile created successfully"),
-        @ApiResponse(responseCode = "400", description = "Email already exists")
+        @ApiResponse(responseCode = "400", description = "Email already exists, dob is not a yyyy-MM-dd date, "
+                + "or a phone or address is repeated"),
+        @ApiResponse(responseCode = "503", description = "Password hashing capacity exhausted")
     })
     public ResponseEntity<?> createProfile(@Valid @RequestBody ProfileRequest profileRequest) {
+        String collectionErrors = collectionErrors(profileRequest.getPhones(), profileRequest.getAddresses());
+        if (collectionErrors != null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(collectionErrors);
+        }
         // Check if email already exists
         if (profileService.getProfileByEmail(profileRequest.getEmail()).isPresent()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -93,22 +267,33 @@ public class ProfileController {
     }
 
     @PutMapping("/{id}")
-    @Operation(summary = "Update profile", description = "Updates an existing profile and tracks history")
+    @Operation(summary = "Update profile", description = "Updates an existing profile and tracks history; "
+            + "with If-Match the update only applies to that profile version")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Profile updated successfully"),
-        @ApiResponse(responseCode = "404", description = "Profile not found")
+        @ApiResponse(responseCode = "400", description = "Email already exists or a phone or address is repeated"),
+        @ApiResponse(responseCode = "401", description = "Session token invalid or expired (or missing, when enforced)"),
+        @ApiResponse(responseCode = "403", description = "Session token is for another profile"),
+        @ApiResponse(responseCode = "404", description = "Profile not found"),
+        @ApiResponse(responseCode = "409", description = "Concurrent update, nothing saved"),
+        @ApiResponse(responseCode = "412", description = "Profile no longer at the If-Match version")
     })
     public ResponseEntity<?> updateProfile(
             @PathVariable Long id, 
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody ProfileRequest profileRequest) {
         
+        String collectionErrors = collectionErrors(profileRequest.getPhones(), profileRequest.getAddresses());
+        if (collectionErrors != null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(collectionErrors);
+        }
         Optional<Profile> existingProfileOpt = profileService.getProfileById(id);
         if (existingProfileOpt.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
         }
+        Integer expectedUpdateCount = expectedUpdateCount(id, ifMatch);
 
         Profile existingProfile = existingProfileOpt.get();
-        String previousValuesJson = existingProfile.getCurrentValuesAsJson();
 
         // Check if email is being changed to one that already exists
         Optional<Profile> profileWithEmail = profileService.getProfileByEmail(profileRequest.getEmail());
@@ -118,62 +303,296 @@ public class ProfileController {
         }
 
         Profile updatedProfile = convertToEntity(profileRequest);
-        Profile savedProfile = profileService.updateProfileWithHistory(
-            existingProfile, updatedProfile, previousValuesJson
-        );
+        Profile savedProfile = profileService.updateProfileWithHistory(existingProfile, updatedProfile, expectedUpdateCount);
         
-        return ResponseEntity.ok(convertToResponse(savedProfile));
+        return versioned(ResponseEntity.ok(), savedProfile).body(convertToResponse(savedProfile));
+    }
+
+    @PatchMapping("/{id}")
+    @Operation(summary = "Patch profile", description = "Changes only the fields present in the request and tracks history; "
+            + "phones and addresses can be replaced or edited with add/remove lists, and only changed rows are written")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Profile updated successfully"),
+        @ApiResponse(responseCode = "401", description = "Session token invalid or expired (or missing, when enforced)"),
+        @ApiResponse(responseCode = "403", description = "Session token is for another profile"),
+        @ApiResponse(responseCode = "400", description = "Blank or already used email, or a repeated phone or address"),
+        @ApiResponse(responseCode = "404", description = "Profile not found"),
+        @ApiResponse(responseCode = "409", description = "Concurrent update, nothing saved"),
+        @ApiResponse(responseCode = "412", description = "Profile no longer at the If-Match version")
+    })
+    public ResponseEntity<?> patchProfile(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody ProfilePatchRequest patch) {
+        Integer expectedUpdateCount = expectedUpdateCount(id, ifMatch);
+        String collectionErrors = collectionErrors(patch.getPhones(), patch.getAddresses(),
+                patch.getAddPhones(), patch.getRemovePhones(), patch.getAddAddresses(), patch.getRemoveAddresses());
+        if (collectionErrors != null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(collectionErrors);
+        }
+        if (patch.getEmail() != null) {
+            if (patch.getEmail().isBlank()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("email must not be blank");
+            }
+            Optional<Profile> profileWithEmail = profileService.getProfileByEmail(patch.getEmail());
+            if (profileWithEmail.isPresent() && !profileWithEmail.get().getId().equals(id)) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body("Email already exists: " + patch.getEmail());
+            }
+        }
+
+        Profile savedProfile = profileService.patchProfileWithHistory(
+                id, profile -> applyPatch(patch, profile), expectedUpdateCount);
+        return versioned(ResponseEntity.ok(), savedProfile).body(convertToResponse(savedProfile));
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Create profiles in bulk", description = "Validates each profile, hashes passwords in parallel and inserts all accepted profiles in one batched transaction")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Per-item results, in request order"),
+        @ApiResponse(responseCode = "400", description = "Batch too large"),
+        @ApiResponse(responseCode = "503", description = "Password hashing capacity exhausted")
+    })
+    public ResponseEntity<?> createProfilesBatch(@RequestBody List<ProfileRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Batch too large: at most " + maxBatchSize + " profiles per request");
+        }
+
+        BatchItemResult[] results = new BatchItemResult[requests.size()];
+        Map<String, Integer> indexByEmail = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ProfileRequest request = requests.get(i);
+            String violations = validationErrors(request);
+            if (violations != null) {
+                results[i] = new BatchItemResult(i, BatchItemResult.INVALID, null, violations);
+            } else if (indexByEmail.putIfAbsent(emailKey(request.getEmail()), i) != null) {
+                results[i] = new BatchItemResult(i, BatchItemResult.CONFLICT, null,
+                        "Duplicate email in batch: " + request.getEmail());
+            }
+        }
+
+        // One query for every email in the batch instead of one per item
+        for (Profile existing : profileService.getProfilesByEmails(indexByEmail.keySet())) {
+            Integer index = indexByEmail.remove(emailKey(existing.getEmail()));
+            if (index != null) {
+                results[index] = new BatchItemResult(index, BatchItemResult.CONFLICT, null,
+                        "Email already exists: " + existing.getEmail());
+            }
+        }
+
+        List<Integer> indexes = new ArrayList<>(indexByEmail.values());
+        Collections.sort(indexes);
+        List<Profile> profiles = new ArrayList<>(indexes.size());
+        List<String> passwords = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            profiles.add(convertToEntity(requests.get(index)));
+            passwords.add(requests.get(index).getPassword());
+        }
+        List<Profile> savedProfiles = profileService.createProfilesBatch(profiles, passwords);
+        for (int i = 0; i < indexes.size(); i++) {
+            int index = indexes.get(i);
+            results[index] = new BatchItemResult(index, BatchItemResult.CREATED, savedProfiles.get(i).getId(), null);
+        }
+        return ResponseEntity.ok(Arrays.asList(results));
+    }
+
+    @PutMapping("/batch")
+    @Operation(summary = "Update profiles in bulk", description = "Applies each update and its history entry in one batched transaction; "
+            + "with a session token, items for any other profile are refused with FORBIDDEN")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Per-item results, in request order"),
+        @ApiResponse(responseCode = "400", description = "Batch too large"),
+        @ApiResponse(responseCode = "401", description = "Session token invalid or expired (or missing, when enforced)")
+    })
+    public ResponseEntity<?> updateProfilesBatch(
+            @RequestAttribute(name = SessionTokenInterceptor.TOKEN_PROFILE_ID, required = false) Long tokenProfileId,
+            @RequestBody List<ProfileBatchUpdateRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Batch too large: at most " + maxBatchSize + " profiles per request");
+        }
+
+        BatchItemResult[] results = new BatchItemResult[requests.size()];
+        Map<Long, Integer> indexById = new HashMap<>();
+        Map<String, Integer> indexByEmail = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ProfileBatchUpdateRequest request = requests.get(i);
+            String violations = validationErrors(request);
+            if (violations != null) {
+                results[i] = new BatchItemResult(i, BatchItemResult.INVALID, request.getId(), violations);
+            } else if (tokenProfileId != null && !tokenProfileId.equals(request.getId())) {
+                results[i] = new BatchItemResult(i, BatchItemResult.FORBIDDEN, request.getId(),
+                        "Session token is for another profile");
+            } else if (indexById.putIfAbsent(request.getId(), i) != null) {
+                results[i] = new BatchItemResult(i, BatchItemResult.CONFLICT, request.getId(),
+                        "Duplicate id in batch: " + request.getId());
+            } else if (indexByEmail.putIfAbsent(emailKey(request.getEmail()), i) != null) {
+                indexById.remove(request.getId());
+                results[i] = new BatchItemResult(i, BatchItemResult.CONFLICT, request.getId(),
+                        "Duplicate email in batch: " + request.getEmail());
+            }
+        }
+
+        Map<Long, Profile> existingById = new HashMap<>();
+        for (Profile existing : profileService.getProfilesByIds(indexById.keySet())) {
+            existingById.put(existing.getId(), existing);
+        }
+        for (Profile owner : profileService.getProfilesByEmails(indexByEmail.keySet())) {
+            Integer index = indexByEmail.get(emailKey(owner.getEmail()));
+            if (index != null && !owner.getId().equals(requests.get(index).getId())) {
+                indexById.remove(requests.get(index).getId());
+                results[index] = new BatchItemResult(index, BatchItemResult.CONFLICT, requests.get(index).getId(),
+                        "Email already exists: " + owner.getEmail());
+            }
+        }
+
+        List<Integer> indexes = new ArrayList<>();
+        List<ProfileService.ProfileUpdate> updates = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : indexById.entrySet()) {
+            Profile existing = existingById.get(entry.getKey());
+            int index = entry.getValue();
+            if (existing == null) {
+                results[index] = new BatchItemResult(index, BatchItemResult.NOT_FOUND, entry.getKey(), "Profile not found");
+                continue;
+            }
+            indexes.add(index);
+            updates.add(new ProfileService.ProfileUpdate(existing, convertToEntity(requests.get(index))));
+        }
+        List<Profile> savedProfiles = profileService.updateProfilesWithHistory(updates);
+        for (int i = 0; i < indexes.size(); i++) {
+            int index = indexes.get(i);
+            results[index] = new BatchItemResult(index, BatchItemResult.UPDATED, savedProfiles.get(i).getId(), null);
+        }
+        return ResponseEntity.ok(Arrays.asList(results));
     }
 
     @PostMapping("/login")
-    @Operation(summary = "Login", description = "Authenticates a user by email and password")
+    @Operation(summary = "Login", description = "Authenticates a user by email and password and returns a session token "
+            + "to send as \"Authorization: Bearer <token>\" when updating, deleting or verifying the profile")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Login successful"),
         @ApiResponse(responseCode = "401", description = "Invalid credentials"),
-        @ApiResponse(responseCode = "404", description = "Email not found")
+        @ApiResponse(responseCode = "404", description = "Email not found"),
+        @ApiResponse(responseCode = "429", description = "Too many attempts for this email or from this client"),
+        @ApiResponse(responseCode = "503", description = "Password hashing capacity exhausted")
     })
-    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest,
+                                                                  HttpServletRequest httpRequest) {
+        loginThrottle.checkAttempt(httpRequest.getRemoteAddr(), loginRequest.getEmail());
         Optional<Profile> profileOptional = profileService.getProfileByEmail(loginRequest.getEmail());
         
         if (profileOptional.isEmpty()) {
             // Email not found - ask to register
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new LoginResponse(false, "Email not found. Please register first."));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new LoginResponse(false, "Email not found. Please register first.")));
         }
         
         Profile profile = profileOptional.get();
-        boolean passwordMatches = profileService.verifyPassword(loginRequest.getPassword(), profile.getPassword());
-        
-        if (!passwordMatches) {
-            // Password is wrong
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(new LoginResponse(false, "Incorrect password. Please try again."));
-        }
-        
-        // Login successful
-        return ResponseEntity.ok(new LoginResponse(
-            true, 
-            "Login successful", 
-            profile.getId(), 
-            profile.getName(), 
-            profile.getEmail()
-        ));
+        // BCrypt runs on the hashing pool; the request thread is released while it does
+        return profileService.verifyPasswordAsync(loginRequest.getPassword(), profile.getPassword())
+                .thenApply(passwordMatches -> {
+                    if (!passwordMatches) {
+                        // Password is wrong
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                                .body(new LoginResponse(false, "Incorrect password. Please try again."));
+                    }
+
+                    // Login successful; the token saves the client proving its password again
+                    SessionTokens.Issued session = sessionTokens.issue(profile.getId());
+                    return ResponseEntity.ok(new LoginResponse(
+                        true, 
+                        "Login successful", 
+                        profile.getId(), 
+                        profile.getName(), 
+                        profile.getEmail(),
+                        session.token(),
+                        session.expiresAt()
+                    ));
+                });
     }
 
     @GetMapping("/{id}/history")
-    @Operation(summary = "Get profile update history", description = "Retrieves the update history for a profile")
+    @Operation(summary = "Get profile update history", description = "Retrieves the update history for a profile, newest first, one keyset page at a time")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "History retrieved successfully"),
+        @ApiResponse(responseCode = "400", description = "Malformed cursor"),
         @ApiResponse(responseCode = "404", description = "Profile not found")
     })
-    public ResponseEntity<?> getProfileHistory(@PathVariable Long id) {
+    public ResponseEntity<?> getProfileHistory(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
         Optional<Profile> profile = profileService.getProfileById(id);
         if (profile.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
         }
 
-        List<ProfileHistory> history = profileService.getProfileHistory(id);
-        return ResponseEntity.ok(history);
+        // The cursor is "<updatedAt>,<id>" of the last row on the previous page
+        LocalDate beforeDate = null;
+        Long beforeId = null;
+        if (cursor != null) {
+            String[] parts = cursor.split(",");
+            try {
+                beforeDate = LocalDate.parse(parts[0]);
+                beforeId = Long.parseLong(parts[1]);
+            } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid cursor: " + cursor);
+            }
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<ProfileHistory> history = profileService.getProfileHistoryPage(id, beforeDate, beforeId, pageSize + 1);
+        boolean hasMore = history.size() > pageSize;
+        List<ProfileHistoryResponse> items = history.stream()
+                .limit(pageSize)
+                .map(ProfileHistoryResponse::from)
+                .collect(Collectors.toList());
+        ProfileHistoryResponse last = hasMore ? items.get(items.size() - 1) : null;
+        String nextCursor = last == null ? null : last.getUpdatedAt() + "," + last.getId();
+        return ResponseEntity.ok(new ProfileHistoryPageResponse(items, pageSize, nextCursor));
+    }
+
+    @GetMapping("/{id}/as-of")
+    @Operation(summary = "Get profile as of a date", description = "Rebuilds the profile as it stood at the end of the given day (yyyy-MM-dd)")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Profile as of that date"),
+        @ApiResponse(responseCode = "404", description = "Profile not found, or not yet created on that date"),
+        @ApiResponse(responseCode = "422", description = "History needed for that date cannot be read"),
+        @ApiResponse(responseCode = "503", description = "History needed is still being written")
+    })
+    public ResponseEntity<?> getProfileAsOf(
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            Optional<Profile> profile = profileService.getProfileAsOf(id, date);
+            if (profile.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
+            }
+            return ResponseEntity.ok(convertToResponse(profile.get()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/{id}/versions/{updateCount}")
+    @Operation(summary = "Get profile at a version", description = "Rebuilds the profile as it was after the given number of updates (0 = as created) from its history")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Profile at that version"),
+        @ApiResponse(responseCode = "404", description = "Profile or version not found"),
+        @ApiResponse(responseCode = "422", description = "History needed for that version cannot be read"),
+        @ApiResponse(responseCode = "503", description = "History needed is still being written")
+    })
+    public ResponseEntity<?> getProfileAtVersion(@PathVariable Long id, @PathVariable int updateCount) {
+        try {
+            Optional<Profile> profile = profileService.getProfileAtVersion(id, updateCount);
+            if (profile.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile version not found");
+            }
+            return ResponseEntity.ok(convertToResponse(profile.get()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+        }
     }
 
     @GetMapping("/{id}/update-count")
@@ -195,32 +614,38 @@ public class ProfileController {
     @Operation(summary = "Verify password", description = "Verifies if the provided password matches the stored hash")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Password verification result"),
-        @ApiResponse(responseCode = "404", description = "Profile not found")
+        @ApiResponse(responseCode = "401", description = "Session token invalid or expired (or missing, when enforced)"),
+        @ApiResponse(responseCode = "403", description = "Session token is for another profile"),
+        @ApiResponse(responseCode = "404", description = "Profile not found"),
+        @ApiResponse(responseCode = "429", description = "Too many attempts for this profile or from this client"),
+        @ApiResponse(responseCode = "503", description = "Password hashing capacity exhausted")
     })
-    public ResponseEntity<?> verifyPassword(
+    public CompletableFuture<ResponseEntity<?>> verifyPassword(
             @PathVariable Long id,
-            @RequestBody PasswordVerificationRequest request) {
+            @RequestBody PasswordVerificationRequest request,
+            HttpServletRequest httpRequest) {
         
+        loginThrottle.checkAttempt(httpRequest.getRemoteAddr(), "id:" + id);
         Optional<Profile> profile = profileService.getProfileById(id);
         if (profile.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found"));
         }
 
-        boolean isMatch = profileService.verifyPassword(request.getPassword(), profile.get().getPassword());
-        
-        return ResponseEntity.ok(new PasswordVerificationResponse(isMatch));
+        return profileService.verifyPasswordAsync(request.getPassword(), profile.get().getPassword())
+                .thenApply(isMatch -> ResponseEntity.ok(new PasswordVerificationResponse(isMatch)));
     }
 
     @DeleteMapping("/{id}")
     @Operation(summary = "Delete profile", description = "Deletes a profile")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Profile deleted successfully"),
+        @ApiResponse(responseCode = "401", description = "Session token invalid or expired (or missing, when enforced)"),
+        @ApiResponse(responseCode = "403", description = "Session token is for another profile"),
         @ApiResponse(responseCode = "404", description = "Profile not found")
     })
     public ResponseEntity<?> deleteProfile(@PathVariable Long id) {
-        Optional<Profile> profile = profileService.getProfileById(id);
-        if (profile.isPresent()) {
-            profileService.deleteProfile(id);
+        if (profileService.deleteProfile(id)) {
             return ResponseEntity.ok("Profile deleted successfully");
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Profile not found");
@@ -233,47 +658,217 @@ public class ProfileController {
         return ResponseEntity.ok("Profile controller is working!");
     }
 
-    private Profile convertToEntity(ProfileRequest request) {
+    // Bean Validation is not on the classpath (the @Valid annotations are inert and the frontend
+    // registers with just email and password), so batches check the fields the service relies on
+    private String validationErrors(ProfileRequest request) {
+        List<String> errors = new ArrayList<>();
+        if (request.getEmail() == null || request.getEmail().isBlank()) {
+            errors.add("email must not be blank");
+        }
+        if (request.getPassword() == null || request.getPassword().isBlank()) {
+            errors.add("password must not be blank");
+        }
+        if (request.getDob() != null && !request.getDob().isBlank()) {
+            try {
+                dobFrom(request.getDob());
+            } catch (DateTimeParseException e) {
+                errors.add("dob must be a date (yyyy-MM-dd)");
+            }
+        }
+        String collectionErrors = collectionErrors(request.getPhones(), request.getAddresses());
+        if (collectionErrors != null) {
+            errors.add(collectionErrors);
+        }
+        if (request instanceof ProfileBatchUpdateRequest update && update.getId() == null) {
+            errors.add("id must not be null");
+        }
+        return errors.isEmpty() ? null : String.join("; ", errors);
+    }
+
+    // Phones and addresses are stored as sorted sets, so a list that repeats an element is
+    // rejected rather than quietly shortened
+    @SafeVarargs
+    private static String collectionErrors(List<String>... lists) {
+        for (List<String> values : lists) {
+            if (values == null) {
+                continue;
+            }
+            Set<String> seen = new HashSet<>();
+            for (String value : values) {
+                if (value == null) {
+                    return "phones and addresses must not contain null";
+                }
+                if (!seen.add(value)) {
+                    return "Duplicate phone or address: " + value;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Strong ETag naming one version of one profile, e.g. "42-7"
+    static String etagOf(Long id, int updateCount) {
+        return "\"" + id + "-" + updateCount + "\"";
+    }
+
+    private static ResponseEntity.BodyBuilder versioned(ResponseEntity.BodyBuilder response, Profile profile) {
+        return response.eTag(etagOf(profile.getId(), profile.getUpdateCount()));
+    }
+
+    /**
+     * @return the version an If-Match header pins the update to, or null when there is no
+     *         header or it is "*"
+     * @throws ProfileVersionMismatchException when none of its tags is a version of this profile
+     * @throws EmptyResultDataAccessException when the profile does not exist (answered with 404)
+     */
+    private Integer expectedUpdateCount(Long id, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String prefix = id + "-";
+        for (String tag : ifMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            value = value.replace("\"", "");
+            if (value.startsWith(prefix)) {
+                try {
+                    return Integer.parseInt(value.substring(prefix.length()));
+                } catch (NumberFormatException e) {
+                    // not one of our tags; try the next one
+                }
+            }
+        }
+        // No tag for this profile: 412 with its current version, or 404 when there is no such profile
+        Profile current = profileService.getProfileById(id)
+                .orElseThrow(() -> new EmptyResultDataAccessException("Profile " + id + " not found", 1));
+        throw new ProfileVersionMismatchException(id, -1, current.getUpdateCount());
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // MySQL's default collation compares emails case-insensitively
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    // The mapping helpers are static and package-private so users-benchmarks can measure them
+    static Profile convertToEntity(ProfileRequest request) {
         Profile profile = new Profile();
         profile.setName(request.getName());
         profile.setEmail(request.getEmail());
-        profile.setDob(request.getDob());
+        profile.setDob(dobFrom(request.getDob()));
         
-        if (request.getDob() != null && !request.getDob().isEmpty()) {
-            try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-                LocalDate dob = LocalDate.parse(request.getDob(), formatter);
-                int age = Period.between(dob, LocalDate.now()).getYears();
-                profile.setAge(age);
-            } catch (DateTimeParseException e) {
-                // Handle parsing error (log it or set default value)
-                System.err.println("Invalid date format: " + request.getDob());
-                // profile.setAge(0); // Optional: set default value
-            }
+        Integer age = ageFrom(profile.getDob());
+        if (age != null) {
+            profile.setAge(age);
         }
         
         profile.setSex(request.getSex());
         // Password will be hashed in the service layer
         profile.setPassword(""); // Set empty string, will be replaced with hash
-        profile.setPhones(request.getPhones());
-        profile.setAddresses(request.getAddresses());
+        profile.setPhones(request.getPhones() == null ? new TreeSet<>() : new TreeSet<>(request.getPhones()));
+        profile.setAddresses(request.getAddresses() == null ? new TreeSet<>() : new TreeSet<>(request.getAddresses()));
         return profile;
     }
 
-    private ProfileResponse convertToResponse(Profile profile) {
+    /**
+     * @throws DateTimeParseException when dob is not a yyyy-MM-dd date (answered with 400)
+     */
+    static LocalDate dobFrom(String dob) {
+        return dob == null || dob.isBlank() ? null : LocalDate.parse(dob.trim());
+    }
+
+    static Integer ageFrom(LocalDate dob) {
+        return dob == null ? null : Period.between(dob, LocalDate.now()).getYears();
+    }
+
+    // The stored age is only as fresh as the last write, so responses work it out from dob
+    private static int currentAge(Profile profile) {
+        Integer age = ageFrom(profile.getDob());
+        return age != null ? age : profile.getAge();
+    }
+
+    private static String dobText(Profile profile) {
+        return profile.getDob() == null ? null : profile.getDob().toString();
+    }
+
+    private void applyPatch(ProfilePatchRequest patch, Profile profile) {
+        if (patch.getName() != null) {
+            profile.setName(patch.getName());
+        }
+        if (patch.getEmail() != null) {
+            profile.setEmail(patch.getEmail());
+        }
+        if (patch.getDob() != null) {
+            profile.setDob(dobFrom(patch.getDob()));
+            Integer age = ageFrom(profile.getDob());
+            if (age != null) {
+                profile.setAge(age);
+            }
+        }
+        if (patch.getSex() != null) {
+            profile.setSex(patch.getSex());
+        }
+        if (patch.getPhones() != null) {
+            profile.replacePhones(patch.getPhones());
+        }
+        if (patch.getAddresses() != null) {
+            profile.replaceAddresses(patch.getAddresses());
+        }
+        if (patch.getRemovePhones() != null) {
+            patch.getRemovePhones().forEach(profile.getPhones()::remove);
+        }
+        if (patch.getAddPhones() != null) {
+            profile.getPhones().addAll(patch.getAddPhones());
+        }
+        if (patch.getRemoveAddresses() != null) {
+            patch.getRemoveAddresses().forEach(profile.getAddresses()::remove);
+        }
+        if (patch.getAddAddresses() != null) {
+            profile.getAddresses().addAll(patch.getAddAddresses());
+        }
+    }
+
+    static ProfileResponse convertToResponse(Profile profile) {
         ProfileResponse response = new ProfileResponse();
         response.setId(profile.getId());
         response.setName(profile.getName());
         response.setEmail(profile.getEmail());
-        response.setDob(profile.getDob());
-        response.setAge(profile.getAge());
+        response.setDob(dobText(profile));
+        response.setAge(currentAge(profile));
         response.setSex(profile.getSex());
         response.setPassword("********"); // Mask the password in response
-        response.setPhones(profile.getPhones());
-        response.setAddresses(profile.getAddresses());
+        response.setPhones(profile.getPhones() == null ? null : new ArrayList<>(profile.getPhones()));
+        response.setAddresses(profile.getAddresses() == null ? null : new ArrayList<>(profile.getAddresses()));
         return response;
     }
 
+    private ProfileExportRecord convertToExportRecord(Profile profile, boolean includePhones, boolean includeAddresses,
+                                                      List<ProfileHistory> history) {
+        ProfileExportRecord record = new ProfileExportRecord();
+        record.setId(profile.getId());
+        record.setName(profile.getName());
+        record.setEmail(profile.getEmail());
+        record.setDob(dobText(profile));
+        record.setAge(currentAge(profile));
+        record.setSex(profile.getSex());
+        record.setUpdateCount(profile.getUpdateCount());
+        if (includePhones) {
+            record.setPhones(new ArrayList<>(profile.getPhones()));
+        }
+        if (includeAddresses) {
+            record.setAddresses(new ArrayList<>(profile.getAddresses()));
+        }
+        if (history != null) {
+            record.setHistory(history.stream().map(ProfileHistoryResponse::from).collect(Collectors.toList()));
+        }
+        return record;
+    }
+
     // DTO for password verification request
     public static class PasswordVerificationRequest {
         private String password;
@@ -352,18 +947,23 @@ public class ProfileController {
         private Long profileId;
         private String name;
         private String email;
+        private String token;
+        private Instant expiresAt;
 
         public LoginResponse(boolean success, String message) {
             this.success = success;
             this.message = message;
         }
 
-        public LoginResponse(boolean success, String message, Long profileId, String name, String email) {
+        public LoginResponse(boolean success, String message, Long profileId, String name, String email,
+                             String token, Instant expiresAt) {
             this.success = success;
             this.message = message;
             this.profileId = profileId;
             this.name = name;
             this.email = email;
+            this.token = token;
+            this.expiresAt = expiresAt;
         }
 
         public boolean isSuccess() {
@@ -385,5 +985,13 @@ public class ProfileController {
         public String getEmail() {
             return email;
         }
+
+        public String getToken() {
+            return token;
+        }
+
+        public Instant getExpiresAt() {
+            return expiresAt;
+        }
     }
 }
\ No newline at end of file
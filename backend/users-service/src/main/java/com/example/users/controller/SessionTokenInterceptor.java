@@ -0,0 +1,120 @@
+package com.example.users.controller;
+
+import com.example.users.service.SessionTokens;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Checks the "Authorization: Bearer" session token on the endpoints that change or vouch for
+ * one profile: PUT, PATCH and DELETE of /api/profiles/{id} and POST .../verify-password.
+ * A token that does not verify is answered with 401 and one issued to another profile with
+ * 403. Requests without a token are let through unless users.session.enforce is on, so
+ * clients can move to tokens before they become mandatory.
+ * <p>
+ * PUT /api/profiles/batch names its profiles in the body, so here the token is only verified
+ * and its profile id left in the {@link #TOKEN_PROFILE_ID} request attribute; the controller
+ * refuses every item for another profile.
+ * <p>
+ * Runs after handler mapping and goes by the pattern and id MVC actually matched, so every
+ * spelling of a path that reaches these handlers (matrix parameters, percent-encoding, a
+ * trailing ";") is checked the same way.
+ */
+@Component
+public class SessionTokenInterceptor implements HandlerInterceptor {
+
+    private static final String PROFILE_PATTERN = "/api/profiles/{id}";
+    private static final String VERIFY_PASSWORD_PATTERN = "/api/profiles/{id}/verify-password";
+    private static final String BATCH_PATTERN = "/api/profiles/batch";
+    private static final Set<String> PROFILE_METHODS = Set.of("PUT", "PATCH", "DELETE");
+    private static final String BEARER = "Bearer ";
+
+    // Profile id of the verified token on a batch update; absent when the request had no token
+    public static final String TOKEN_PROFILE_ID = "com.example.users.session.profileId";
+
+    private final SessionTokens sessionTokens;
+    private final boolean enforce;
+
+    public SessionTokenInterceptor(SessionTokens sessionTokens, @Value("${users.session.enforce:false}") boolean enforce) {
+        this.sessionTokens = sessionTokens;
+        this.enforce = enforce;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        // Asynchronous and error dispatches of a request were checked when it came in
+        if (request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        boolean batch = BATCH_PATTERN.equals(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE))
+                && request.getMethod().equals("PUT");
+        Long profileId = batch ? null : protectedProfileId(request);
+        if (!batch && profileId == null) {
+            return true;
+        }
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            if (enforce) {
+                reject(response, HttpStatus.UNAUTHORIZED, "Session token required");
+                return false;
+            }
+            return true;
+        }
+        Optional<Long> tokenProfileId = sessionTokens.verify(authorization.substring(BEARER.length()).trim());
+        if (tokenProfileId.isEmpty()) {
+            reject(response, HttpStatus.UNAUTHORIZED, "Invalid or expired session token");
+            return false;
+        }
+        if (batch) {
+            request.setAttribute(TOKEN_PROFILE_ID, tokenProfileId.get());
+            return true;
+        }
+        if (!tokenProfileId.get().equals(profileId)) {
+            reject(response, HttpStatus.FORBIDDEN, "Session token is for another profile");
+            return false;
+        }
+        return true;
+    }
+
+    // The matched id when the handler is one of the protected endpoints, otherwise null
+    private static Long protectedProfileId(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String method = request.getMethod();
+        boolean isProtected = PROFILE_PATTERN.equals(pattern) && PROFILE_METHODS.contains(method)
+                || VERIFY_PASSWORD_PATTERN.equals(pattern) && method.equals("POST");
+        if (!isProtected) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        try {
+            return Long.valueOf(variables.get("id"));
+        } catch (NumberFormatException e) {
+            // Not an id; binding the path variable answers it with 400
+            return null;
+        }
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        if (status == HttpStatus.UNAUTHORIZED) {
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+        }
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+}
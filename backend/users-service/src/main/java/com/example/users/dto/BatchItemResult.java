@@ -0,0 +1,25 @@
+package com.example.users.dto;
+
+import lombok.Data;
+
+@Data
+public class BatchItemResult {
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String INVALID = "INVALID";
+    public static final String CONFLICT = "CONFLICT";
+    public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String FORBIDDEN = "FORBIDDEN";
+
+    private int index; // position of the item in the request array
+    private String status;
+    private Long id;
+    private String message;
+
+    public BatchItemResult(int index, String status, Long id, String message) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.message = message;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.users.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ProfileBatchUpdateRequest extends ProfileRequest {
+    private Long id; // required; checked with the other fields in ProfileController.validationErrors
+}
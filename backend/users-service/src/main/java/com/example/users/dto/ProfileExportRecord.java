@@ -0,0 +1,22 @@
+package com.example.users.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+// One NDJSON line of the export; collections that were not requested are left out
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProfileExportRecord {
+    private Long id;
+    private String name;
+    private String email;
+    private String dob;
+    private int age;
+    private String sex;
+    private int updateCount;
+    private List<String> phones;
+    private List<String> addresses;
+    private List<ProfileHistoryResponse> history;
+}
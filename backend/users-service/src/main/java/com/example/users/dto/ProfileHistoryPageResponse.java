@@ -0,0 +1,18 @@
+package com.example.users.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ProfileHistoryPageResponse {
+    private List<ProfileHistoryResponse> items;
+    private int limit;
+    private String nextCursor; // pass as "cursor" to fetch the next (older) page; null on the last page
+
+    public ProfileHistoryPageResponse(List<ProfileHistoryResponse> items, int limit, String nextCursor) {
+        this.items = items;
+        this.limit = limit;
+        this.nextCursor = nextCursor;
+    }
+}
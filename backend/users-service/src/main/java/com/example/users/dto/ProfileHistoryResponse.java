@@ -0,0 +1,38 @@
+package com.example.users.dto;
+
+import com.example.users.model.ProfileHistory;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+// Delta rows leave the copied name/email/sex/dob columns empty, so nulls are omitted
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProfileHistoryResponse {
+    private Long id;
+    private Long profileId;
+    private int updateCount;
+    private LocalDate updatedAt;
+    private String name;
+    private String email;
+    private String sex;
+    private String dob;
+    private String previousValues;
+    private Boolean checkpoint;
+
+    public static ProfileHistoryResponse from(ProfileHistory history) {
+        ProfileHistoryResponse response = new ProfileHistoryResponse();
+        response.setId(history.getId());
+        response.setProfileId(history.getProfile().getId());
+        response.setUpdateCount(history.getUpdateCount());
+        response.setUpdatedAt(history.getUpdatedAt());
+        response.setName(history.getName());
+        response.setEmail(history.getEmail());
+        response.setSex(history.getSex());
+        response.setDob(history.getDob());
+        response.setPreviousValues(history.getPreviousValues());
+        response.setCheckpoint(history.getCheckpoint());
+        return response;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.users.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ProfilePageResponse {
+    private List<ProfileResponse> items;
+    private int limit;
+    private Long nextCursor; // pass as "after" to fetch the next page; null on the last page
+
+    public ProfilePageResponse(List<ProfileResponse> items, int limit, Long nextCursor) {
+        this.items = items;
+        this.limit = limit;
+        this.nextCursor = nextCursor;
+    }
+}
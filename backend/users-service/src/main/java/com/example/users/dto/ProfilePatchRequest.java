@@ -0,0 +1,21 @@
+package com.example.users.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+// Fields left null are not changed. phones/addresses replace the whole set; the add/remove
+// lists edit it instead and are applied after a replacement
+@Data
+public class ProfilePatchRequest {
+    private String name;
+    private String email;
+    private String dob;
+    private String sex;
+    private List<String> phones;
+    private List<String> addresses;
+    private List<String> addPhones;
+    private List<String> removePhones;
+    private List<String> addAddresses;
+    private List<String> removeAddresses;
+}
@@ -14,6 +14,7 @@ public class ProfileResponse {
     private int age;
     private String sex;
     private String password;
+    // Sets on the profile, listed in sorted order
     private List<String> phones;
     private List<String> addresses;
 }
@@ -0,0 +1,17 @@
+package com.example.users.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+
+@Data
+public class ProfileStatsResponse {
+    private long total;
+    private LocalDate asOf;          // ages are whole years on this day
+    private Instant reconciledAt;    // when the counts were last rebuilt from the database
+    private Map<String, Long> bySex;
+    private Map<String, Long> byAgeGroup; // in age order; "unknown" counts profiles without a usable dob
+    private Map<String, Map<String, Long>> bySexAndAgeGroup;
+}
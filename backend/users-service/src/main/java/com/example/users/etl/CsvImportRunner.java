@@ -0,0 +1,62 @@
+package com.example.users.etl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs the CSV import at startup when users.import.dir is set, e.g.
+ * <pre>
+ * java -jar users-service.jar --spring.main.web-application-type=none \
+ *     --users.import.dir=etl/data --users.import.truncate=true --users.import.parallel=true
+ * </pre>
+ * and exits afterwards unless users.import.exit=false.
+ */
+@Component
+@ConditionalOnProperty("users.import.dir")
+public class CsvImportRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvImportRunner.class);
+
+    private final CsvImportService csvImportService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${users.import.dir}")
+    private Path directory;
+
+    @Value("${users.import.parallel:false}")
+    private boolean parallel;
+
+    @Value("${users.import.truncate:false}")
+    private boolean truncate;
+
+    @Value("${users.import.exit:true}")
+    private boolean exitAfterImport;
+
+    public CsvImportRunner(CsvImportService csvImportService, ConfigurableApplicationContext context) {
+        this.csvImportService = csvImportService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        List<CsvImportService.FileReport> reports = csvImportService.importDirectory(directory, parallel, truncate);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long rows = reports.stream().mapToLong(CsvImportService.FileReport::rows).sum();
+        log.info("CSV import from {} finished: {} rows in {} ms ({} rows/s, parallel={})",
+                directory, rows, millis, millis == 0 ? rows : rows * 1000 / millis, parallel);
+        if (exitAfterImport) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+}
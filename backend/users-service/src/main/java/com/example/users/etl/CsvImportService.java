@@ -0,0 +1,311 @@
+package com.example.users.etl;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.IdSequenceAligner;
+import com.example.users.service.EmailBloomFilter;
+import com.example.users.service.ProfileCache;
+import com.example.users.service.ProfileStatistics;
+import com.example.users.util.CsvReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Bulk loader for the CSV exports in etl/data (profiles, profile_phones, profile_addresses,
+ * profile_history). Files are streamed a record at a time and written with JDBC batch
+ * inserts, one transaction per chunk, so memory is bounded by the chunk size (times the
+ * number of in-flight chunks in parallel mode), plus the profile ids and the addresses seen
+ * so far. Ids from the files are kept; phones, addresses and history rows whose profile_id
+ * was not in profiles.csv are skipped and counted. Blank and repeated phones and addresses
+ * are dropped, as the API would reject them.
+ */
+@Service
+public class CsvImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvImportService.class);
+
+    private static final String PROFILES_SQL =
+            "insert into profiles (id, name, email, email_domain, dob, age, sex, password, update_count, created_at)"
+                    + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String PHONES_SQL = "insert into profile_phones (profile_id, phone) values (?, ?)";
+    private static final String ADDRESSES_SQL = "insert into profile_addresses (profile_id, address) values (?, ?)";
+    private static final String HISTORY_SQL =
+            "insert into profile_history (id, profile_id, name, email, sex, password_hash, previous_values, updated_at, update_count)"
+                    + " values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final IdSequenceAligner idSequenceAligner;
+    private final ProfileCache profileCache;
+    private final EmailBloomFilter emailBloomFilter;
+    private final ProfileStatistics profileStatistics;
+    private final int chunkSize;
+    private final int threads;
+
+    public CsvImportService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            IdSequenceAligner idSequenceAligner,
+            ProfileCache profileCache,
+            EmailBloomFilter emailBloomFilter,
+            ProfileStatistics profileStatistics,
+            @Value("${users.import.chunk-size:5000}") int chunkSize,
+            @Value("${users.import.threads:4}") int threads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idSequenceAligner = idSequenceAligner;
+        this.profileCache = profileCache;
+        this.emailBloomFilter = emailBloomFilter;
+        this.profileStatistics = profileStatistics;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    public record FileReport(String file, long rows, long inserted, long skipped, long millis) {
+        public double rowsPerSecond() {
+            return millis == 0 ? rows : rows * 1000.0 / millis;
+        }
+    }
+
+    /**
+     * Loads the four files from the directory. Profiles are loaded first so the other files
+     * can be checked against them; in parallel mode the chunks of each file are written
+     * concurrently.
+     *
+     * @param truncate delete existing profile data first (for reseeding an environment)
+     */
+    public List<FileReport> importDirectory(Path directory, boolean parallel, boolean truncate) {
+        if (truncate) {
+            for (String table : List.of("profile_history", "profile_phones", "profile_addresses", "profiles")) {
+                jdbcTemplate.update("delete from " + table);
+            }
+        }
+
+        ProfileIds profileIds = new ProfileIds();
+        List<FileReport> reports = new ArrayList<>();
+        ExecutorService pool = parallel
+                ? Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("csv-import-"))
+                : null;
+        try {
+            reports.add(load(directory.resolve("profiles.csv"), PROFILES_SQL, pool, row -> {
+                long id = Long.parseLong(row.get("id"));
+                profileIds.add(id);
+                return List.<Object[]>of(new Object[]{
+                        id, blankToNull(row.get("name")), row.get("email"), Profile.emailDomainOf(row.get("email")),
+                        dateOrNull(row.get("dob")),
+                        intOrZero(row.get("age")), blankToNull(row.get("sex")), blankToNull(row.get("password")),
+                        intOrZero(row.get("update_count")), timestampOrNull(row.get("created_at"))});
+            }));
+            reports.add(load(directory.resolve("profile_phones.csv"), PHONES_SQL, pool, row -> {
+                Long profileId = knownProfileId(profileIds, row.get("id"));
+                if (profileId == null) {
+                    return List.of();
+                }
+                // One CSV row carries every phone of the profile, separated by ';'; phones are a set
+                Set<String> distinct = new LinkedHashSet<>();
+                for (String phone : row.get("phone").split(";")) {
+                    if (!phone.isBlank()) {
+                        distinct.add(phone.trim());
+                    }
+                }
+                List<Object[]> phones = new ArrayList<>(distinct.size());
+                distinct.forEach(phone -> phones.add(new Object[]{profileId, phone}));
+                return phones;
+            }));
+            // One row per address, so repeats can be rows apart; addresses are a set like phones
+            Set<String> addresses = new HashSet<>();
+            reports.add(load(directory.resolve("profile_addresses.csv"), ADDRESSES_SQL, pool, row -> {
+                Long profileId = knownProfileId(profileIds, row.get("profile_id"));
+                String address = row.get("address");
+                if (profileId == null || address == null || address.isBlank()
+                        || !addresses.add(profileId + "\n" + address.trim())) {
+                    return List.of();
+                }
+                return List.<Object[]>of(new Object[]{profileId, address.trim()});
+            }));
+            reports.add(load(directory.resolve("profile_history.csv"), HISTORY_SQL, pool, row -> {
+                Long profileId = knownProfileId(profileIds, row.get("profile_id"));
+                if (profileId == null) {
+                    return List.of();
+                }
+                String updatedAt = blankToNull(row.get("updated_at"));
+                return List.<Object[]>of(new Object[]{
+                        Long.parseLong(row.get("id")), profileId, blankToNull(row.get("name")), blankToNull(row.get("email")),
+                        blankToNull(row.get("sex")), blankToNull(row.get("password_hash")), blankToNull(row.get("previous_values")),
+                        updatedAt == null ? null : Date.valueOf(LocalDate.parse(updatedAt.substring(0, 10))),
+                        intOrZero(row.get("update_count"))});
+            }));
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        idSequenceAligner.alignAll();
+        profileCache.invalidateAll();
+        emailBloomFilter.rebuild();
+        profileStatistics.reconcile();
+        return reports;
+    }
+
+    private FileReport load(Path file, String sql, ExecutorService pool,
+                            Function<Map<String, String>, List<Object[]>> mapper) {
+        long start = System.nanoTime();
+        long rows = 0;
+        long inserted = 0;
+        long skipped = 0;
+        // Caps the chunks held in memory while the pool catches up with the reader
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<?>> pending = new ArrayList<>();
+
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            List<String> header = reader.next();
+            if (header == null) {
+                return new FileReport(file.getFileName().toString(), 0, 0, 0, 0);
+            }
+            List<Object[]> chunk = new ArrayList<>(chunkSize);
+            List<String> record;
+            while ((record = reader.next()) != null) {
+                rows++;
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < header.size() && i < record.size(); i++) {
+                    row.put(header.get(i), record.get(i));
+                }
+                List<Object[]> mapped = mapper.apply(row);
+                if (mapped.isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+                chunk.addAll(mapped);
+                inserted += mapped.size();
+                if (chunk.size() >= chunkSize) {
+                    submit(sql, chunk, pool, inFlight, pending);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(sql, chunk, pool, inFlight, pending);
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import of " + file + " interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import of " + file + " failed", e.getCause());
+        }
+
+        FileReport report = new FileReport(file.getFileName().toString(), rows, inserted, skipped,
+                (System.nanoTime() - start) / 1_000_000);
+        log.info("Imported {}: {} rows read, {} inserted, {} skipped in {} ms ({} rows/s)",
+                report.file(), report.rows(), report.inserted(), report.skipped(), report.millis(),
+                Math.round(report.rowsPerSecond()));
+        return report;
+    }
+
+    private void submit(String sql, List<Object[]> chunk, ExecutorService pool,
+                        Semaphore inFlight, List<Future<?>> pending) throws InterruptedException {
+        if (pool == null) {
+            writeChunk(sql, chunk);
+            return;
+        }
+        inFlight.acquire();
+        pending.add(pool.submit(() -> {
+            try {
+                writeChunk(sql, chunk);
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+
+    private void writeChunk(String sql, List<Object[]> chunk) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, chunk));
+    }
+
+    private static Long knownProfileId(ProfileIds profileIds, String value) {
+        long id = Long.parseLong(value);
+        return profileIds.contains(id) ? id : null;
+    }
+
+    /**
+     * The ids read from profiles.csv. Exports are dense from 1, so a bitmap holds them in a bit
+     * each; the rare id outside the int range goes to a set instead of being lost. Only the
+     * reading thread touches it.
+     */
+    private static final class ProfileIds {
+
+        private final BitSet dense = new BitSet();
+        private final Set<Long> sparse = new HashSet<>();
+
+        void add(long id) {
+            if (id >= 0 && id <= Integer.MAX_VALUE) {
+                dense.set((int) id);
+            } else {
+                sparse.add(id);
+            }
+        }
+
+        boolean contains(long id) {
+            return id >= 0 && id <= Integer.MAX_VALUE ? dense.get((int) id) : sparse.contains(id);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // dob is a DATE column; text that is not a yyyy-MM-dd date loads as unknown rather than failing the chunk
+    private static Date dateOrNull(String value) {
+        try {
+            return value == null || value.isBlank() ? null : Date.valueOf(LocalDate.parse(value.trim()));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // created_at as exported (yyyy-MM-dd HH:mm:ss.ffffff); unreadable text loads as unknown, like dob
+    private static Timestamp timestampOrNull(String value) {
+        try {
+            return value == null || value.isBlank() ? null : Timestamp.valueOf(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int intOrZero(String value) {
+        return value == null || value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+}
@@ -2,18 +2,44 @@ package com.example.users.model;
 
 import lombok.Data;
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.SQLRestriction;
+import org.hibernate.annotations.SortNatural;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 @Data
 @Entity
-@Table(name = "profiles")
+@Table(name = "profiles", indexes = {
+        // Search filters (GET /api/profiles/search); InnoDB appends id to each, which serves
+        // the id-ordered keyset pages for equality filters without a sort
+        @Index(name = "idx_profiles_name", columnList = "name"),
+        @Index(name = "idx_profiles_email_domain", columnList = "email_domain"),
+        // deleted_at included so the statistics count stays an index-only scan under the restriction below
+        @Index(name = "idx_profiles_sex_dob_deleted", columnList = "sex, dob, deleted_at"),
+        @Index(name = "idx_profiles_dob", columnList = "dob"),
+        @Index(name = "idx_profiles_deleted_at", columnList = "deleted_at")
+})
+// Soft-deleted profiles (users.delete.mode=soft) are invisible to every entity load and JPQL
+// query until ProfilePurger removes them; native queries still see them
+@SQLRestriction("deleted_at is null")
 public class Profile {
+    public static final int BATCH_SIZE = 100;
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence ids (a table on MySQL) so inserts can be JDBC-batched; IDENTITY cannot be
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "profiles_seq")
+    @SequenceGenerator(name = "profiles_seq", sequenceName = "profiles_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @NotBlank
@@ -24,9 +50,16 @@ public class Profile {
     @Column(unique = true)
     private String email;
 
+    // Lower-cased part after the '@', kept in step with email so domain searches can use an index
+    @Column(name = "email_domain")
+    private String emailDomain;
+
+    // A DATE column, so age filters and statistics compare dates; DobColumnMigration converts
+    // the text column of older schemas
     @NotNull
-    private String dob;
+    private LocalDate dob;
 
+    // Age in years when the profile was last written; goes stale, so queries and statistics use dob
     private int age;
 
     @NotBlank
@@ -36,29 +69,73 @@ public class Profile {
     @Column(length = 100)
     private String password;
 
+    // Doubles as the optimistic lock: Hibernate bumps it on every update and a concurrent
+    // writer that read the old value fails instead of overwriting
+    @Version
     @Column(name = "update_count", nullable = false)
     private int updateCount = 0; // Track number of updates
 
+    // Set on insert; null for profiles created before the column existed
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    // Set by a soft delete, which also clears the email so it can be registered again
+    @Column(name = "deleted_at")
+    private Instant deletedAt;
+
     @OneToMany(mappedBy = "profile", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<ProfileHistory> history; // History of updates
 
+    // Collections are loaded for up to BATCH_SIZE profiles at once so lists don't cost 1 + 2N queries.
+    // Sets rather than bags: Hibernate can address a set row by its value, so changing one phone
+    // deletes/inserts that row instead of rewriting the whole collection. Kept sorted in memory
+    // too, so a profile reads back in the same order whether it was just written or loaded;
+    // the API rejects lists that repeat an element instead of dropping the repeat
     @ElementCollection
+    @BatchSize(size = BATCH_SIZE)
+    @SortNatural
     @CollectionTable(name = "profile_phones", joinColumns = @JoinColumn(name = "profile_id"))
     @Column(name = "phone")
-    private List<String> phones;
+    private SortedSet<String> phones = new TreeSet<>();
 
     @ElementCollection
+    @BatchSize(size = BATCH_SIZE)
+    @SortNatural
     @CollectionTable(name = "profile_addresses", joinColumns = @JoinColumn(name = "profile_id"))
     @Column(name = "address")
-    private List<String> addresses;
+    private SortedSet<String> addresses = new TreeSet<>();
+
+    @PrePersist
+    void beforeInsert() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+        deriveEmailDomain();
+    }
+
+    @PreUpdate
+    void deriveEmailDomain() {
+        emailDomain = emailDomainOf(email);
+    }
+
+    public static String emailDomainOf(String email) {
+        int at = email == null ? -1 : email.indexOf('@');
+        return at < 0 ? null : email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // The replace methods edit the loaded set in place; assigning a new set would make
+    // Hibernate delete and reinsert every row. null clears the set
+    public void replacePhones(Collection<String> values) {
+        replaceElements(phones, values);
+    }
 
-    // Method to increment update count
-    public void incrementUpdateCount() {
-        this.updateCount++;
+    public void replaceAddresses(Collection<String> values) {
+        replaceElements(addresses, values);
     }
 
-    public String getCurrentValuesAsJson() {
-        return String.format("{\"name\":\"%s\",\"email\":\"%s\",\"sex\":\"%s\",\"age\":%d,\"dob\":\"%s\",\"phones\":%s,\"addresses\":%s}",
-                name, email, sex, age, dob, phones.toString(), addresses.toString());
+    private static void replaceElements(Set<String> target, Collection<String> values) {
+        Set<String> wanted = values == null ? Set.of() : new TreeSet<>(values);
+        target.retainAll(wanted);
+        target.addAll(wanted);
     }
-}
\ No newline at end of file
+}
@@ -6,13 +6,19 @@ import java.time.LocalDate;
 
 @Data
 @Entity
-@Table(name = "profile_history")
+@Table(name = "profile_history", indexes = {
+        @Index(name = "idx_profile_history_profile_update", columnList = "profile_id, update_count"),
+        // Serves the newest-first history pages and as-of-date lookups (InnoDB appends id)
+        @Index(name = "idx_profile_history_profile_updated_at", columnList = "profile_id, updated_at")
+})
 public class ProfileHistory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "profile_history_seq")
+    @SequenceGenerator(name = "profile_history_seq", sequenceName = "profile_history_seq",
+            allocationSize = Profile.ID_ALLOCATION_SIZE)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "profile_id", nullable = false)
     private Profile profile;
 
@@ -27,6 +33,10 @@ public class ProfileHistory {
     @Column(columnDefinition = "TEXT") // Store JSON representation of previous values
     private String previousValues;
 
+    // true: previousValues holds every field; false: only the fields this update changed;
+    // null: written before deltas, always a full snapshot
+    private Boolean checkpoint;
+
     private LocalDate updatedAt;
     private int updateCount;
 
@@ -34,13 +44,10 @@ public class ProfileHistory {
     public ProfileHistory() {}
 
     // Constructor for creating history entry
-    public ProfileHistory(Profile profile, String previousValuesJson, int updateCount) {
+    public ProfileHistory(Profile profile, String previousValuesJson, boolean checkpoint, int updateCount) {
         this.profile = profile;
-        this.name = profile.getName();
-        this.email = profile.getEmail();
-        this.sex = profile.getSex();
-        this.passwordHash = profile.getPassword();
         this.previousValues = previousValuesJson;
+        this.checkpoint = checkpoint;
         this.updatedAt = LocalDate.now();
         this.updateCount = updateCount;
     }
@@ -0,0 +1,63 @@
+package com.example.users.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts profiles.dob from the text column earlier versions created to DATE; ddl-auto
+ * update never changes the type of an existing column. Values that are not yyyy-MM-dd dates
+ * are cleared first (they never produced an age either), so the ALTER cannot stop half-way on
+ * a bad row. Once the column is a DATE this costs one information_schema lookup. Waits for
+ * the entity manager factory so the table exists on an empty database.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class DobColumnMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(DobColumnMigration.class);
+
+    private static final int BATCH = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DobColumnMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        // database() is the schema on MySQL; H2 schemas are created with the DATE column and never match
+        List<String> types = jdbcTemplate.queryForList(
+                "select data_type from information_schema.columns"
+                        + " where table_schema = database() and lower(table_name) = 'profiles' and lower(column_name) = 'dob'",
+                String.class);
+        if (types.isEmpty() || types.get(0).equalsIgnoreCase("date")) {
+            return;
+        }
+
+        List<Object[]> invalid = new ArrayList<>();
+        jdbcTemplate.query("select id, dob from profiles where dob is not null", row -> {
+            try {
+                LocalDate.parse(row.getString(2));
+            } catch (DateTimeParseException e) {
+                invalid.add(new Object[]{row.getLong(1)});
+            }
+        });
+        for (int from = 0; from < invalid.size(); from += BATCH) {
+            jdbcTemplate.batchUpdate("update profiles set dob = null where id = ?",
+                    invalid.subList(from, Math.min(from + BATCH, invalid.size())));
+        }
+        jdbcTemplate.execute("alter table profiles modify dob date null");
+        log.info("Converted profiles.dob from {} to DATE; cleared {} values that were not dates",
+                types.get(0), invalid.size());
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.users.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills profiles.email_domain for rows written before the column existed. Runs at startup
+ * in id windows so no single statement locks the whole table; once every row has a domain
+ * it costs one indexed lookup. Waits for the entity manager factory, whose ddl-auto update
+ * adds the column (and on an empty database the table).
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class EmailDomainBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailDomainBackfill.class);
+
+    private static final long WINDOW = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EmailDomainBackfill(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void backfill() {
+        Long first = jdbcTemplate.queryForObject(
+                "select min(id) from profiles where email_domain is null and email like '%@%'", Long.class);
+        if (first == null) {
+            return;
+        }
+        Long last = jdbcTemplate.queryForObject("select max(id) from profiles", Long.class);
+        long updated = 0;
+        for (long from = first - 1; from < last; from += WINDOW) {
+            updated += jdbcTemplate.update(
+                    "update profiles set email_domain = lower(substring(email, locate('@', email) + 1))"
+                            + " where id > ? and id <= ? and email_domain is null and email like '%@%'",
+                    from, from + WINDOW);
+        }
+        log.info("Backfilled email_domain on {} profiles", updated);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.users.repository;
+
+import com.example.users.model.Profile;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Keeps the id sequences ahead of the rows already in their tables. Needed when the
+ * sequences are first created on a database whose ids came from AUTO_INCREMENT, and after
+ * bulk loads that insert explicit ids. On MySQL the sequences are single-row tables.
+ */
+@Component
+public class IdSequenceAligner {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceAligner.class);
+
+    // table -> sequence
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "profiles", "profiles_seq",
+            "profile_history", "profile_history_seq");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dialect dialect;
+
+    public IdSequenceAligner(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    @PostConstruct
+    public void alignAll() {
+        SEQUENCES.forEach(this::align);
+    }
+
+    private void align(String table, String sequence) {
+        Long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+        if (maxId == null || maxId == 0) {
+            return;
+        }
+        // Pooled ids come from (value - allocationSize, value], so the next value must clear that window
+        long floor = maxId + Profile.ID_ALLOCATION_SIZE + 1;
+        if (dialect.getSequenceSupport().supportsSequences()) {
+            Long next = jdbcTemplate.queryForObject(
+                    dialect.getSequenceSupport().getSequenceNextValString(sequence), Long.class);
+            if (next != null && next < floor) {
+                jdbcTemplate.execute("alter sequence " + sequence + " restart with " + floor);
+                log.info("Restarted {} at {} to clear max({}.id) = {}", sequence, floor, table, maxId);
+            }
+        } else {
+            int updated = jdbcTemplate.update(
+                    "update " + sequence + " set next_val = ? where next_val < ?", floor, floor);
+            if (updated > 0) {
+                log.info("Moved {} to {} to clear max({}.id) = {}", sequence, floor, table, maxId);
+            }
+        }
+    }
+}
@@ -1,13 +1,48 @@
 package com.example.users.repository;
 
 import com.example.users.model.ProfileHistory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ProfileHistoryRepository extends JpaRepository<ProfileHistory, Long> {
-    List<ProfileHistory> findByProfileIdOrderByUpdatedAtDesc(Long profileId);
     List<ProfileHistory> findByProfileId(Long profileId);
+    List<ProfileHistory> findByProfileIdInOrderByUpdateCountAsc(Collection<Long> profileIds);
+    boolean existsByProfileIdAndUpdateCount(Long profileId, int updateCount);
+    List<ProfileHistory> findByProfileIdAndUpdateCountBetweenOrderByUpdateCountDesc(Long profileId, int from, int to);
+
+    // Lowest update after the given one whose row holds every field
+    @Query("select min(h.updateCount) from ProfileHistory h where h.profile.id = :profileId"
+            + " and h.updateCount > :updateCount and (h.checkpoint is null or h.checkpoint = true)")
+    Integer findFirstFullEntryAfter(Long profileId, int updateCount);
+
+    // Newest-first keyset pages on (updated_at, id); rows without an updated_at are not listed
+    @Query("select h from ProfileHistory h where h.profile.id = :profileId and h.updatedAt is not null"
+            + " order by h.updatedAt desc, h.id desc")
+    List<ProfileHistory> findNewest(Long profileId, Limit limit);
+
+    @Query("select h from ProfileHistory h where h.profile.id = :profileId"
+            + " and (h.updatedAt < :updatedAt or (h.updatedAt = :updatedAt and h.id < :id))"
+            + " order by h.updatedAt desc, h.id desc")
+    List<ProfileHistory> findOlderThan(Long profileId, LocalDate updatedAt, Long id, Limit limit);
+
+    // Last update made on or before the date: the latest such day, then the highest count on it
+    @Query("select max(h.updateCount) from ProfileHistory h where h.profile.id = :profileId and h.updatedAt ="
+            + " (select max(h2.updatedAt) from ProfileHistory h2 where h2.profile.id = :profileId and h2.updatedAt <= :date)")
+    Integer findLastUpdateCountOnOrBefore(Long profileId, LocalDate date);
+
+    @Query("select min(h.updatedAt) from ProfileHistory h where h.profile.id = :profileId")
+    LocalDate findFirstUpdatedAt(Long profileId);
+
+    // One statement however long the histories are, instead of loading and deleting row by row
+    @Modifying
+    @Query(value = "delete from profile_history where profile_id in :profileIds", nativeQuery = true)
+    int deleteByProfileIds(Collection<Long> profileIds);
 }
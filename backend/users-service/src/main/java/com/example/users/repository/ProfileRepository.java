@@ -1,12 +1,81 @@
 package com.example.users.repository;
 
 import com.example.users.model.Profile;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProfileRepository extends JpaRepository<Profile, Long> {
+
 	Optional<Profile> findByEmail(String email);
+
+	List<Profile> findByEmailIn(Collection<String> emails);
+
+	// Keyset page: everything after the given id, in id order
+	List<Profile> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+	// The existing profiles among the ids, with the version each has reached
+	@Query("select p.id as id, p.updateCount as updateCount from Profile p where p.id in :ids")
+	List<ProfileVersion> findUpdateCounts(Collection<Long> ids);
+
+	// One row per (sex, dob) pair, read from idx_profiles_sex_dob_deleted without touching the table rows
+	@Query("select p.sex as sex, p.dob as dob, count(p) as profiles from Profile p group by p.sex, p.dob")
+	List<DemographicCount> countBySexAndDob();
+
+	// What a delete needs for the cache, read-your-writes and the statistics, without loading the collections
+	@Query("select p.email as email, p.sex as sex, p.dob as dob from Profile p where p.id = :id")
+	Optional<DeletedProfile> findDeletedProfileById(Long id);
+
+	// Bumps the version too, so an update that read the profile before this fails instead of restoring it
+	@Modifying
+	@Query("update Profile p set p.deletedAt = :deletedAt, p.email = null, p.emailDomain = null,"
+			+ " p.updateCount = p.updateCount + 1 where p.id = :id")
+	int markDeleted(Long id, Instant deletedAt);
+
+	@Query(value = "select id from profiles where deleted_at is not null order by id limit :limit", nativeQuery = true)
+	List<Long> findSoftDeletedIds(int limit);
+
+	// Set-based deletes of the element collections and rows; native, so they reach soft-deleted profiles too
+	@Modifying
+	@Query(value = "delete from profile_phones where profile_id in :ids", nativeQuery = true)
+	int deletePhones(Collection<Long> ids);
+
+	@Modifying
+	@Query(value = "delete from profile_addresses where profile_id in :ids", nativeQuery = true)
+	int deleteAddresses(Collection<Long> ids);
+
+	@Modifying
+	@Query(value = "delete from profiles where id in :ids", nativeQuery = true)
+	int deleteRows(Collection<Long> ids);
+
+	interface ProfileVersion {
+		Long getId();
+
+		int getUpdateCount();
+	}
+
+	interface DeletedProfile {
+		String getEmail();
+
+		String getSex();
+
+		LocalDate getDob();
+	}
+
+	interface DemographicCount {
+		String getSex();
+
+		LocalDate getDob();
+
+		long getProfiles();
+	}
 }
@@ -0,0 +1,68 @@
+package com.example.users.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections taken inside read-only transactions to the replica pool and everything
+ * else (writes, reads in read-write transactions, work outside a transaction) to the
+ * primary. The transaction's read-only flag is only known once it has begun, so this must
+ * sit behind a LazyConnectionDataSourceProxy, which takes the real connection at the first
+ * statement (see DataSourceRoutingConfig).
+ * <p>
+ * {@link #onPrimary} sends read-only work to the primary too, for reads that must see a
+ * write the replica may not have applied yet. Without a replica configured there is no
+ * routing and it changes nothing.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    private enum Route { PRIMARY, REPLICA }
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry meterRegistry) {
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        this.primaryConnections = Counter.builder("users.datasource.connections").tag("route", "primary")
+                .description("Connections handed out by the read/write router")
+                .register(meterRegistry);
+        this.replicaConnections = Counter.builder("users.datasource.connections").tag("route", "replica")
+                .description("Connections handed out by the read/write router")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY_REQUIRED.get() == null) {
+            replicaConnections.increment();
+            return Route.REPLICA;
+        }
+        primaryConnections.increment();
+        return Route.PRIMARY;
+    }
+
+    public static <T> T onPrimary(Supplier<T> work) {
+        if (PRIMARY_REQUIRED.get() != null) {
+            return work.get();
+        }
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+
+    public static <T> T onPrimaryIf(boolean primaryRequired, Supplier<T> work) {
+        return primaryRequired ? onPrimary(work) : work.get();
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.users.service;
+
+import com.example.users.repository.ProfileRepository;
+import com.example.users.repository.ReadWriteRoutingDataSource;
+import com.example.users.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of every registered email, used to answer "definitely not registered"
+ * without a database query. It is rebuilt from profiles.email shortly after startup and
+ * then periodically (which also forgets deleted emails), and every email written in
+ * between is added. Until the first build finishes every email is reported as possibly
+ * present, so lookups fall through to the database.
+ * <p>
+ * Each instance keeps its own filter and only sees its own adds, so an email registered
+ * through another instance is missing here until the next rebuild. "Absent" is therefore
+ * only final when this is the only instance writing profiles
+ * ({@code users.email-filter.single-writer}); otherwise callers confirm it on the primary.
+ */
+@Component
+public class EmailBloomFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailBloomFilter.class);
+
+    private final ProfileRepository profileRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final double falsePositiveRate;
+    private final long minimumCapacity;
+    private final int fetchSize;
+    private final boolean singleWriter;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    // Adds go to the filter being rebuilt first and then to the live one, and a rebuild
+    // publishes the new live filter before clearing "rebuilding", so no add can be lost
+    private volatile BloomFilter current;
+    private volatile BloomFilter rebuilding;
+
+    private final Timer rebuildTimer;
+    private final Counter definitelyAbsent;
+    private final Counter possiblyPresent;
+    private final Counter falsePositives;
+    private final Counter missedWrites;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public EmailBloomFilter(
+            ProfileRepository profileRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${users.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${users.email-filter.minimum-capacity:100000}") long minimumCapacity,
+            @Value("${users.stream.fetch-size:500}") int fetchSize,
+            @Value("${users.email-filter.single-writer:false}") boolean singleWriter) {
+        this.profileRepository = profileRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.falsePositiveRate = falsePositiveRate;
+        this.minimumCapacity = minimumCapacity;
+        this.fetchSize = fetchSize;
+        this.singleWriter = singleWriter;
+
+        this.rebuildTimer = Timer.builder("users.email_filter.rebuild")
+                .description("Time to rebuild the email Bloom filter from the profiles table")
+                .register(meterRegistry);
+        this.definitelyAbsent = Counter.builder("users.email_filter.checks").tag("result", "absent")
+                .register(meterRegistry);
+        this.possiblyPresent = Counter.builder("users.email_filter.checks").tag("result", "maybe")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("users.email_filter.checks").tag("result", "false_positive")
+                .register(meterRegistry);
+        this.missedWrites = Counter.builder("users.email_filter.checks").tag("result", "missed_write")
+                .description("Emails the filter ruled out that another instance had registered")
+                .register(meterRegistry);
+        Gauge.builder("users.email_filter.false_positive_rate.expected", this, EmailBloomFilter::expectedFalsePositiveRate)
+                .description("False positive rate implied by the filter's fill ratio")
+                .register(meterRegistry);
+        Gauge.builder("users.email_filter.false_positive_rate.observed", this, EmailBloomFilter::observedFalsePositiveRate)
+                .description("Share of unregistered emails the filter failed to rule out")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return false only when the email is certainly not registered
+     */
+    public boolean mightContain(String email) {
+        BloomFilter filter = current;
+        if (filter == null || email == null) {
+            return true;
+        }
+        boolean maybe = filter.mightContain(key(email));
+        (maybe ? possiblyPresent : definitelyAbsent).increment();
+        return maybe;
+    }
+
+    /**
+     * @return true when a false {@link #mightContain} answer can be trusted without asking
+     * the database, i.e. no other instance writes profiles
+     */
+    public boolean isAbsenceFinal() {
+        return singleWriter;
+    }
+
+    /**
+     * Records that an "absent" answer turned out to have a matching row, written by another
+     * instance since the last rebuild, and adds the email so the next check finds it.
+     */
+    public void recordMissedWrite(String email) {
+        missedWrites.increment();
+        add(email);
+    }
+
+    /**
+     * Records that a "maybe" answer turned out to have no matching row.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Adds the email now and again once the surrounding transaction completes, so a rebuild
+     * whose snapshot predates the commit cannot drop it.
+     */
+    public void add(String email) {
+        if (email == null) {
+            return;
+        }
+        String key = key(email);
+        put(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    put(key);
+                }
+            });
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${users.email-filter.rebuild-interval:PT1H}")
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            long start = System.nanoTime();
+            long expected = Math.max(minimumCapacity, profileRepository.count() * 2);
+            BloomFilter next = new BloomFilter(expected, falsePositiveRate);
+            rebuilding = next;
+            long[] loaded = {0};
+            // On the primary: a lagging replica would leave out emails whose commits (and adds)
+            // happened before this rebuild started
+            ReadWriteRoutingDataSource.onPrimary(() -> readOnlyTransaction.execute(status -> {
+                // Forward-only cursor, so memory does not grow with the table
+                try (Stream<String> emails = entityManager
+                        .createQuery("select p.email from Profile p", String.class)
+                        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                        .getResultStream()) {
+                    emails.forEach(email -> {
+                        if (email != null) {
+                            next.put(key(email));
+                            loaded[0]++;
+                        }
+                    });
+                }
+                return null;
+            }));
+            current = next;
+            rebuilding = null;
+            long elapsed = System.nanoTime() - start;
+            rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Email Bloom filter rebuilt with {} emails ({} bits) in {} ms, expected false positive rate {}",
+                    loaded[0], next.bitCount(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    String.format(Locale.ROOT, "%.5f", next.expectedFalsePositiveRate()));
+        } catch (RuntimeException e) {
+            rebuilding = null;
+            log.warn("Email Bloom filter rebuild failed; keeping the previous filter", e);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private void put(String key) {
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(key);
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(key);
+        }
+    }
+
+    private double expectedFalsePositiveRate() {
+        BloomFilter filter = current;
+        return filter == null ? 1.0 : filter.expectedFalsePositiveRate();
+    }
+
+    private double observedFalsePositiveRate() {
+        double negatives = definitelyAbsent.count() + falsePositives.count();
+        return negatives == 0 ? 0.0 : falsePositives.count() / negatives;
+    }
+
+    // MySQL's default collation compares emails case-insensitively, so the filter does too
+    private static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.users.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of history entries that have not yet been written to the database.
+ * Entries are JSON lines in numbered segment files; every append is forced to disk before
+ * it returns, which is before the profile update commits. An update that rolls back after
+ * its entries were appended adds an abort line naming them. Entries are completed once
+ * stored, dropped or aborted, and a closed segment is deleted when nothing at or below its
+ * last sequence is still outstanding.
+ */
+class HistoryJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryJournal.class);
+
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ABORTED = "aborted";
+
+    private record Segment(Path path, long lastSequence) {
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ObjectMapper objectMapper;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private Path currentPath;
+    private FileChannel current;
+    private long currentLastSequence;
+    private long nextSequence = 1;
+    // Appended or recovered, and not yet stored, dropped or aborted
+    private final TreeSet<Long> outstanding = new TreeSet<>();
+
+    HistoryJournal(Path directory, long segmentBytes, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads every entry left over from a previous run and opens a fresh segment for new
+     * appends. Aborted entries are left out, and of two entries for the same profile update
+     * only the later one is kept. The old segments stay until their entries are completed.
+     */
+    List<ProfileHistoryWriter.PendingHistory> recover() {
+        Map<String, ProfileHistoryWriter.PendingHistory> entries = new HashMap<>();
+        Set<Long> aborted = new HashSet<>();
+        lock.lock();
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(directory)) {
+                segments = files
+                        .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                        .sorted((a, b) -> Long.compare(firstSequence(a), firstSequence(b)))
+                        .toList();
+            }
+            for (Path segment : segments) {
+                long lastSequence = 0;
+                try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        try {
+                            JsonNode node = objectMapper.readTree(line);
+                            if (node.has(ABORTED)) {
+                                for (JsonNode sequence : node.get(ABORTED)) {
+                                    aborted.add(sequence.asLong());
+                                    lastSequence = Math.max(lastSequence, sequence.asLong());
+                                }
+                                continue;
+                            }
+                            ProfileHistoryWriter.PendingHistory entry =
+                                    objectMapper.treeToValue(node, ProfileHistoryWriter.PendingHistory.class);
+                            entries.merge(entry.profileId() + ":" + entry.updateCount(), entry,
+                                    (a, b) -> a.sequence() > b.sequence() ? a : b);
+                            lastSequence = Math.max(lastSequence, entry.sequence());
+                        } catch (IOException e) {
+                            // A crash mid-append leaves at most one torn line at the end of a segment
+                            log.warn("Skipping unreadable history journal line in {}", segment);
+                        }
+                    }
+                }
+                if (lastSequence == 0) {
+                    Files.delete(segment);
+                    continue;
+                }
+                closedSegments.add(new Segment(segment, lastSequence));
+                nextSequence = Math.max(nextSequence, lastSequence + 1);
+            }
+            openSegment();
+            List<ProfileHistoryWriter.PendingHistory> recovered = entries.values().stream()
+                    .filter(entry -> !aborted.contains(entry.sequence()))
+                    .sorted(Comparator.comparingLong(ProfileHistoryWriter.PendingHistory::sequence))
+                    .toList();
+            recovered.forEach(entry -> outstanding.add(entry.sequence()));
+            // Segments holding only aborted or superseded entries can go straight away
+            releaseSegments();
+            return recovered;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open history journal in " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Assigns the entry its sequence number and appends it durably.
+     */
+    ProfileHistoryWriter.PendingHistory append(ProfileHistoryWriter.PendingHistory entry) {
+        lock.lock();
+        try {
+            ProfileHistoryWriter.PendingHistory numbered = entry.withSequence(nextSequence++);
+            byte[] line = (objectMapper.writeValueAsString(numbered) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                current.write(buffer);
+            }
+            current.force(false);
+            currentLastSequence = numbered.sequence();
+            outstanding.add(numbered.sequence());
+            rollSegmentIfFull();
+            return numbered;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to history journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the entries' transaction rolled back, so a restart does not replay them.
+     */
+    void abort(Collection<Long> sequences) {
+        lock.lock();
+        try {
+            byte[] line = (objectMapper.writeValueAsString(Map.of(ABORTED, sequences)) + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                current.write(buffer);
+            }
+            current.force(false);
+            currentLastSequence = Math.max(currentLastSequence, sequences.stream().mapToLong(Long::longValue).max().orElse(0));
+            rollSegmentIfFull();
+        } catch (IOException e) {
+            // Without the line a restart replays the entries, and the replay skips updates that never committed
+            log.warn("Failed to record aborted history journal entries {}", sequences, e);
+        } finally {
+            complete(sequences);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks entries as stored or given up on, and deletes the closed segments that no longer
+     * hold an outstanding entry.
+     */
+    void complete(Collection<Long> sequences) {
+        lock.lock();
+        try {
+            outstanding.removeAll(sequences);
+            releaseSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int outstandingEntries() {
+        lock.lock();
+        try {
+            return outstanding.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the open segment, deleting it when none of its entries is outstanding.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (current != null) {
+                current.close();
+                current = null;
+                if (outstanding.isEmpty() || outstanding.first() > currentLastSequence) {
+                    Files.deleteIfExists(currentPath);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close history journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseSegments() {
+        long firstOutstanding = outstanding.isEmpty() ? Long.MAX_VALUE : outstanding.first();
+        while (!closedSegments.isEmpty() && closedSegments.peekFirst().lastSequence() < firstOutstanding) {
+            Path path = closedSegments.pollFirst().path();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete history journal segment {}", path, e);
+            }
+        }
+    }
+
+    private void rollSegmentIfFull() throws IOException {
+        if (current.size() >= segmentBytes) {
+            current.close();
+            closedSegments.add(new Segment(currentPath, currentLastSequence));
+            openSegment();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        currentPath = directory.resolve(SEGMENT_PREFIX + nextSequence + SEGMENT_SUFFIX);
+        current = FileChannel.open(currentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        currentLastSequence = 0;
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.users.service;
+
+import com.example.users.util.LoginThrottledException;
+import com.example.users.util.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Caps password attempts per account and per client address before they reach the database
+ * or BCrypt, so a credential-stuffing burst is turned away for the price of a map lookup
+ * instead of queueing on the hashing pool every other request shares. The account limit
+ * stops guessing at one password from many addresses; the client limit stops one address
+ * spraying many accounts. Buckets are per instance, so with N replicas behind a balancer a
+ * client gets up to N times the configured rate.
+ */
+@Component
+public class LoginThrottle {
+
+    private final RateLimiter accounts;
+    private final RateLimiter clients;
+    private final Counter accountRejections;
+    private final Counter clientRejections;
+
+    public LoginThrottle(
+            @Value("${users.login-throttle.account.burst:5}") int accountBurst,
+            @Value("${users.login-throttle.account.refill-period:PT1M}") Duration accountRefillPeriod,
+            @Value("${users.login-throttle.client.burst:30}") int clientBurst,
+            @Value("${users.login-throttle.client.refill-period:PT2S}") Duration clientRefillPeriod,
+            @Value("${users.login-throttle.maximum-keys:100000}") long maximumKeys,
+            MeterRegistry meterRegistry) {
+        this.accounts = new RateLimiter(accountBurst, accountRefillPeriod, maximumKeys);
+        this.clients = new RateLimiter(clientBurst, clientRefillPeriod, maximumKeys);
+        this.accountRejections = rejections(meterRegistry, "account");
+        this.clientRejections = rejections(meterRegistry, "client");
+        Gauge.builder("users.login_throttle.keys", accounts, RateLimiter::estimatedKeys).tag("limit", "account")
+                .description("Accounts and client addresses with a throttle bucket")
+                .register(meterRegistry);
+        Gauge.builder("users.login_throttle.keys", clients, RateLimiter::estimatedKeys).tag("limit", "client")
+                .description("Accounts and client addresses with a throttle bucket")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes an attempt for the client, then for the account.
+     *
+     * @param account an email, or "id:" and a profile id where the request names no email
+     * @throws LoginThrottledException when either is out of attempts
+     */
+    public void checkAttempt(String clientAddress, String account) {
+        long wait = clients.tryAcquire(clientAddress);
+        if (wait > 0) {
+            clientRejections.increment();
+            throw new LoginThrottledException(Duration.ofNanos(wait));
+        }
+        wait = accounts.tryAcquire(account == null ? "" : account.toLowerCase(Locale.ROOT));
+        if (wait > 0) {
+            accountRejections.increment();
+            throw new LoginThrottledException(Duration.ofNanos(wait));
+        }
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String limit) {
+        return Counter.builder("users.login_throttle.rejections").tag("limit", limit)
+                .description("Login and password checks turned away before any lookup or hashing")
+                .register(meterRegistry);
+    }
+}
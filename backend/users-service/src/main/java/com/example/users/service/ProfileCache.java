@@ -0,0 +1,232 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Size-bounded (W-TinyLFU) read-through cache of profiles keyed by id, with a secondary
+ * email -> id index. Entries are private copies with phones/addresses already loaded, and
+ * every read hands out a fresh copy, so callers may mutate what they get back.
+ * Hit/miss/eviction counters are published as the "profiles" cache in Micrometer.
+ * <p>
+ * Misses are single-flight: concurrent lookups of the same id (or the same email) while a
+ * load is running wait for that load instead of issuing their own query, which is what
+ * happens when a profile page fires its profile, history and update-count calls at once.
+ * users.profile_cache.loads counts loads by outcome (leader ran the query, coalesced
+ * shared it) and users.profile_cache.coalescing_ratio is the share that were coalesced.
+ */
+@Component
+public class ProfileCache {
+
+    private final Cache<Long, Profile> profilesById;
+    private final ConcurrentMap<String, Long> idsByEmail = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ConcurrentMap<String, InFlightLoad> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderLoads;
+    private final Counter coalescedLoads;
+
+    /**
+     * A running load, tagged with the invalidation generation it started in. Its result
+     * is a private copy that joiners copy again.
+     */
+    private record InFlightLoad(long generation, CompletableFuture<Optional<Profile>> result) {
+    }
+
+    public ProfileCache(
+            @Value("${users.profile-cache.maximum-size:10000}") long maximumSize,
+            @Value("${users.profile-cache.expire-after-write:60s}") Duration expireAfterWrite,
+            MeterRegistry meterRegistry) {
+        this.profilesById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .evictionListener((Long id, Profile profile, RemovalCause cause) -> {
+                    if (profile != null) {
+                        idsByEmail.remove(emailKey(profile.getEmail()), id);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, profilesById, "profiles");
+        this.leaderLoads = Counter.builder("users.profile_cache.loads").tag("outcome", "leader")
+                .description("Cache misses by whether they ran the query or waited for a concurrent one")
+                .register(meterRegistry);
+        this.coalescedLoads = Counter.builder("users.profile_cache.loads").tag("outcome", "coalesced")
+                .description("Cache misses by whether they ran the query or waited for a concurrent one")
+                .register(meterRegistry);
+        Gauge.builder("users.profile_cache.coalescing_ratio", this, ProfileCache::coalescingRatio)
+                .description("Share of cache misses served by a concurrent load of the same profile")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a copy of the cached profile, or runs the loader and caches what it found.
+     * The loader must return an entity with phones and addresses loaded; open-in-view is off,
+     * so nothing can load them lazily later.
+     */
+    public Optional<Profile> getById(Long id, Function<Long, Optional<Profile>> loader) {
+        Profile cached = profilesById.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(copyOf(cached));
+        }
+        return load("id:" + id, id, loader);
+    }
+
+    public Optional<Profile> getByEmail(String email, Function<String, Optional<Profile>> loader) {
+        Long id = idsByEmail.get(emailKey(email));
+        Profile cached = id == null ? null : profilesById.getIfPresent(id);
+        // The index can briefly point at an entry whose email has since changed
+        if (cached != null && emailKey(cached.getEmail()).equals(emailKey(email))) {
+            return Optional.of(copyOf(cached));
+        }
+        return load("email:" + emailKey(email), email, loader);
+    }
+
+    private <K> Optional<Profile> load(String flightKey, K key, Function<K, Optional<Profile>> loader) {
+        while (true) {
+            long generation = invalidations.get();
+            InFlightLoad mine = new InFlightLoad(generation, new CompletableFuture<>());
+            InFlightLoad running = inFlight.putIfAbsent(flightKey, mine);
+            if (running == null) {
+                return lead(flightKey, mine, key, loader);
+            }
+            if (running.generation() == generation) {
+                return join(running);
+            }
+            // Started before a write was invalidated, so it may be reading the old row; take its place
+            if (inFlight.replace(flightKey, running, mine)) {
+                return lead(flightKey, mine, key, loader);
+            }
+        }
+    }
+
+    private <K> Optional<Profile> lead(String flightKey, InFlightLoad load, K key,
+                                       Function<K, Optional<Profile>> loader) {
+        leaderLoads.increment();
+        try {
+            Optional<Profile> profile = loader.apply(key);
+            // An invalidation that raced with the load may mean we read the pre-update row
+            if (profile.isPresent() && invalidations.get() == load.generation()) {
+                put(profile.get());
+            }
+            load.result().complete(profile.map(ProfileCache::copyOf));
+            return profile;
+        } catch (RuntimeException | Error e) {
+            load.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, load);
+        }
+    }
+
+    private Optional<Profile> join(InFlightLoad load) {
+        coalescedLoads.increment();
+        try {
+            return load.result().join().map(ProfileCache::copyOf);
+        } catch (CompletionException e) {
+            // Fail the way the leader did
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private double coalescingRatio() {
+        double coalesced = coalescedLoads.count();
+        double total = coalesced + leaderLoads.count();
+        return total == 0 ? 0 : coalesced / total;
+    }
+
+    private void put(Profile profile) {
+        if (profile.getId() == null) {
+            return;
+        }
+        Profile copy = copyOf(profile);
+        Profile previous = profilesById.asMap().put(copy.getId(), copy);
+        if (previous != null && !emailKey(previous.getEmail()).equals(emailKey(copy.getEmail()))) {
+            idsByEmail.remove(emailKey(previous.getEmail()), previous.getId());
+        }
+        if (copy.getEmail() != null) {
+            idsByEmail.put(emailKey(copy.getEmail()), copy.getId());
+        }
+    }
+
+    /**
+     * Drops the entry now and again once the surrounding transaction commits, so a
+     * concurrent read cannot re-populate the cache with the pre-commit row.
+     */
+    public void invalidate(Long id) {
+        if (id == null) {
+            return;
+        }
+        evict(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(id);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        profilesById.invalidateAll();
+        idsByEmail.clear();
+    }
+
+    private void evict(Long id) {
+        invalidations.incrementAndGet();
+        Profile removed = profilesById.asMap().remove(id);
+        if (removed != null && removed.getEmail() != null) {
+            idsByEmail.remove(emailKey(removed.getEmail()), id);
+        }
+    }
+
+    // MySQL's default collation compares emails case-insensitively, so the index does too
+    private static String emailKey(String email) {
+        return email == null ? "" : email.toLowerCase(Locale.ROOT);
+    }
+
+    private static Profile copyOf(Profile source) {
+        Profile copy = new Profile();
+        copy.setId(source.getId());
+        copy.setName(source.getName());
+        copy.setEmail(source.getEmail());
+        copy.setEmailDomain(source.getEmailDomain());
+        copy.setDob(source.getDob());
+        copy.setAge(source.getAge());
+        copy.setSex(source.getSex());
+        copy.setPassword(source.getPassword());
+        copy.setUpdateCount(source.getUpdateCount());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setPhones(source.getPhones() == null ? null : new TreeSet<>(source.getPhones()));
+        copy.setAddresses(source.getAddresses() == null ? null : new TreeSet<>(source.getAddresses()));
+        return copy;
+    }
+}
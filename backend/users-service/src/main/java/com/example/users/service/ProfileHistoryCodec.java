@@ -0,0 +1,196 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Encodes profile history as reverse deltas. The history row for update N holds, as JSON,
+ * the pre-update value of each field that update N changed; every checkpoint-interval-th
+ * row holds all fields instead, so rebuilding an old version never has to walk more than
+ * one interval of rows. Rows written before deltas existed (checkpoint null) are full
+ * snapshots too, but in the layout the old service produced with String.format: strings
+ * unescaped and lists as List.toString(), e.g. "phones":[+1 555 0100, +1 555 0101], which
+ * is not JSON. Those are read with a lenient parser for that fixed layout.
+ */
+@Component
+public class ProfileHistoryCodec {
+
+    private static final TypeReference<LinkedHashMap<String, Object>> FIELDS = new TypeReference<>() {
+    };
+
+    // The fixed text between the values of a legacy snapshot, in order
+    private static final String[] LEGACY_DELIMITERS = {"{\"name\":\"", "\",\"email\":\"", "\",\"sex\":\"",
+            "\",\"age\":", ",\"dob\":\"", "\",\"phones\":[", "],\"addresses\":[", "]}"};
+    private static final String[] LEGACY_FIELDS = {"name", "email", "sex", "age", "dob", "phones", "addresses"};
+
+    private final ObjectMapper objectMapper;
+    private final int checkpointInterval;
+
+    public ProfileHistoryCodec(
+            ObjectMapper objectMapper,
+            @Value("${users.history.checkpoint-interval:20}") int checkpointInterval) {
+        this.objectMapper = objectMapper;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public Map<String, Object> snapshot(Profile profile) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", profile.getName());
+        fields.put("email", profile.getEmail());
+        fields.put("sex", profile.getSex());
+        fields.put("age", profile.getAge());
+        // As yyyy-MM-dd text, the form history rows have always stored it in
+        fields.put("dob", profile.getDob() == null ? null : profile.getDob().toString());
+        // Sorted copies, so the same set compares equal whatever order it was built in
+        fields.put("phones", sorted(profile.getPhones()));
+        fields.put("addresses", sorted(profile.getAddresses()));
+        return fields;
+    }
+
+    public boolean isCheckpoint(int updateCount) {
+        return updateCount % checkpointInterval == 0;
+    }
+
+    /**
+     * @return the JSON stored in previousValues for an update from before to after
+     */
+    public String encode(Map<String, Object> before, Map<String, Object> after, boolean checkpoint) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        before.forEach((field, value) -> {
+            if (checkpoint || !Objects.equals(value, after.get(field))) {
+                changed.put(field, value);
+            }
+        });
+        try {
+            return objectMapper.writeValueAsString(changed);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode profile history", e);
+        }
+    }
+
+    /**
+     * Overwrites the fields recorded in previousValues, stepping state back one version.
+     *
+     * @throws IllegalArgumentException when previousValues is not valid JSON
+     */
+    public void applyReverse(Map<String, Object> state, String previousValues) {
+        if (previousValues == null || previousValues.isBlank()) {
+            return;
+        }
+        try {
+            state.putAll(objectMapper.readValue(previousValues, FIELDS));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unreadable history entry: " + previousValues, e);
+        }
+    }
+
+    /**
+     * Like {@link #applyReverse(Map, String)}, reading a row with a null checkpoint in the
+     * legacy String.format layout.
+     *
+     * @throws IllegalArgumentException when previousValues is in neither form
+     */
+    public void applyReverse(Map<String, Object> state, String previousValues, Boolean checkpoint) {
+        if (checkpoint == null && previousValues != null) {
+            Map<String, Object> legacy = parseLegacy(previousValues);
+            if (legacy != null) {
+                state.putAll(legacy);
+                return;
+            }
+        }
+        applyReverse(state, previousValues);
+    }
+
+    /**
+     * @return the fields of a snapshot in the old String.format layout, or null when the text
+     *         does not have that layout. List items are split on ", ", the separator
+     *         List.toString() used, so an item that itself contains ", " comes back split.
+     */
+    static Map<String, Object> parseLegacy(String text) {
+        if (!text.startsWith(LEGACY_DELIMITERS[0]) || !text.endsWith(LEGACY_DELIMITERS[LEGACY_DELIMITERS.length - 1])) {
+            return null;
+        }
+        int end = text.length() - LEGACY_DELIMITERS[LEGACY_DELIMITERS.length - 1].length();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        int valueStart = LEGACY_DELIMITERS[0].length();
+        for (int i = 0; i < LEGACY_FIELDS.length; i++) {
+            boolean last = i == LEGACY_FIELDS.length - 1;
+            int valueEnd = last ? end : text.indexOf(LEGACY_DELIMITERS[i + 1], valueStart);
+            if (valueEnd < 0 || valueEnd > end) {
+                return null;
+            }
+            String value = text.substring(valueStart, valueEnd);
+            fields.put(LEGACY_FIELDS[i], switch (LEGACY_FIELDS[i]) {
+                case "age" -> legacyAge(value);
+                case "phones", "addresses" -> value.isEmpty() ? List.of() : List.of(value.split(", ", -1));
+                default -> value;
+            });
+            if (!last) {
+                valueStart = valueEnd + LEGACY_DELIMITERS[i + 1].length();
+            }
+        }
+        return fields;
+    }
+
+    private static Integer legacyAge(String value) {
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Profile toProfile(Long id, int updateCount, Map<String, Object> state) {
+        Profile profile = new Profile();
+        profile.setId(id);
+        profile.setUpdateCount(updateCount);
+        profile.setName(text(state.get("name")));
+        profile.setEmail(text(state.get("email")));
+        profile.setSex(text(state.get("sex")));
+        profile.setDob(date(text(state.get("dob"))));
+        profile.setAge(state.get("age") instanceof Number age ? age.intValue() : 0);
+        profile.setPhones(texts(state.get("phones")));
+        profile.setAddresses(texts(state.get("addresses")));
+        return profile;
+    }
+
+    // Snapshots written with String.format stored missing values as the text "null"
+    private static String text(Object value) {
+        return value == null || "null".equals(value) ? null : value.toString();
+    }
+
+    // Rows from before dob was a date may hold text that never parsed; the version shows no dob then
+    private static LocalDate date(String value) {
+        try {
+            return value == null ? null : LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static List<String> sorted(Set<String> values) {
+        return values == null ? List.of() : values.stream().filter(Objects::nonNull).sorted().toList();
+    }
+
+    private static SortedSet<String> texts(Object value) {
+        SortedSet<String> values = new TreeSet<>();
+        if (value instanceof List<?> list) {
+            list.forEach(item -> values.add(String.valueOf(item)));
+        }
+        return values;
+    }
+}
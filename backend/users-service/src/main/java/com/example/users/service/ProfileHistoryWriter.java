@@ -0,0 +1,430 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import com.example.users.model.ProfileHistory;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes ProfileHistory rows either inside the caller's transaction ("sync", the default) or
+ * behind it. In the write-behind modes entries are queued once the profile update commits
+ * and a single background thread inserts whatever has accumulated as one batch, so the
+ * update only pays for the profile write. "async" loses queued entries if the process dies;
+ * "journaled" appends each entry to an fsynced journal before the update commits and
+ * replays the journal on startup. History reads may lag behind updates in both.
+ * <p>
+ * A batch that keeps failing is retried with backoff up to users.history.max-flush-attempts
+ * times and then stored row by row; rows that still fail are dropped when the database
+ * rejects them, and otherwise parked: kept in the journal for the next start (journaled) or
+ * dropped (async). Either way the writer moves on instead of stalling every update behind
+ * a full queue.
+ */
+@Component
+public class ProfileHistoryWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileHistoryWriter.class);
+
+    private static final long IDLE_POLL_MILLIS = 200;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+    private static final HibernateJpaDialect JPA_DIALECT = new HibernateJpaDialect();
+
+    public enum WriteMode { SYNC, ASYNC, JOURNALED }
+
+    /**
+     * A history row detached from the persistence context; sequence is the journal position
+     * (0 when not journaled) and replayed marks entries recovered from the journal.
+     */
+    public record PendingHistory(long sequence, boolean replayed, Long profileId, String name, String email,
+                                 String sex, String passwordHash, String dob, String previousValues,
+                                 Boolean checkpoint, LocalDate updatedAt, int updateCount) {
+
+        static PendingHistory of(ProfileHistory history) {
+            return new PendingHistory(0, false, history.getProfile().getId(), history.getName(), history.getEmail(),
+                    history.getSex(), history.getPasswordHash(), history.getDob(), history.getPreviousValues(),
+                    history.getCheckpoint(), history.getUpdatedAt(), history.getUpdateCount());
+        }
+
+        PendingHistory withSequence(long sequence) {
+            return new PendingHistory(sequence, replayed, profileId, name, email, sex, passwordHash, dob,
+                    previousValues, checkpoint, updatedAt, updateCount);
+        }
+
+        PendingHistory asReplayed() {
+            return new PendingHistory(sequence, true, profileId, name, email, sex, passwordHash, dob,
+                    previousValues, checkpoint, updatedAt, updateCount);
+        }
+
+        ProfileHistory toEntity(Profile profile) {
+            ProfileHistory history = new ProfileHistory();
+            history.setProfile(profile);
+            history.setName(name);
+            history.setEmail(email);
+            history.setSex(sex);
+            history.setPasswordHash(passwordHash);
+            history.setDob(dob);
+            history.setPreviousValues(previousValues);
+            history.setCheckpoint(checkpoint);
+            history.setUpdatedAt(updatedAt);
+            history.setUpdateCount(updateCount);
+            return history;
+        }
+    }
+
+    private final ProfileHistoryRepository profileHistoryRepository;
+    private final ProfileRepository profileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteMode mode;
+    private final int batchSize;
+    private final int maxFlushAttempts;
+    private final BlockingQueue<PendingHistory> queue;
+    private final HistoryJournal journal;
+    // Held while a batch is written so a profile delete can wait out an in-flight insert
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter dropped;
+    private final Counter stalledBatches;
+    private final Counter parked;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public ProfileHistoryWriter(
+            ProfileHistoryRepository profileHistoryRepository,
+            ProfileRepository profileRepository,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${users.history.write-mode:sync}") WriteMode mode,
+            @Value("${users.history.queue-capacity:10000}") int queueCapacity,
+            @Value("${users.history.batch-size:500}") int batchSize,
+            @Value("${users.history.max-flush-attempts:5}") int maxFlushAttempts,
+            @Value("${users.history.journal-dir:history-journal}") Path journalDir,
+            @Value("${users.history.journal-segment-bytes:16777216}") long journalSegmentBytes) {
+        this.profileHistoryRepository = profileHistoryRepository;
+        this.profileRepository = profileRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.maxFlushAttempts = Math.max(1, maxFlushAttempts);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.journal = mode == WriteMode.JOURNALED ? new HistoryJournal(journalDir, journalSegmentBytes, objectMapper) : null;
+
+        Gauge.builder("users.history.write_behind.queue", queue, BlockingQueue::size)
+                .description("History entries waiting for the background writer")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("users.history.write_behind.flush")
+                .description("Time to insert one batch of history entries")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("users.history.write_behind.batch_size")
+                .description("History entries inserted per batch")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("users.history.write_behind.dropped")
+                .description("History entries discarded because their insert failed")
+                .register(meterRegistry);
+        this.stalledBatches = Counter.builder("users.history.write_behind.stalled_batches")
+                .description("Batches that failed every attempt and were stored row by row")
+                .register(meterRegistry);
+        this.parked = Counter.builder("users.history.write_behind.parked")
+                .description("History entries set aside after failing every attempt")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (mode == WriteMode.SYNC) {
+            return;
+        }
+        if (journal != null) {
+            List<PendingHistory> recovered = journal.recover();
+            if (!recovered.isEmpty()) {
+                log.info("Replaying {} history entries from the journal", recovered.size());
+                replay(recovered);
+            }
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Runs before the writer thread starts; on failure the entries stay in the journal for the next start
+    private void replay(List<PendingHistory> recovered) {
+        try {
+            for (int from = 0; from < recovered.size(); from += batchSize) {
+                List<PendingHistory> batch = new ArrayList<>();
+                recovered.subList(from, Math.min(from + batchSize, recovered.size()))
+                        .forEach(entry -> batch.add(entry.asReplayed()));
+                flush(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records history for profiles saved in the current transaction. In the write-behind
+     * modes nothing is queued unless the transaction commits; in journaled mode the entries
+     * are on disk before it does.
+     */
+    public void write(List<ProfileHistory> history) {
+        if (mode == WriteMode.SYNC) {
+            profileHistoryRepository.saveAll(history);
+            return;
+        }
+        List<PendingHistory> pending = history.stream().map(PendingHistory::of).toList();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(journal == null ? pending : pending.stream().map(journal::append).toList());
+            return;
+        }
+        if (journal == null) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(pending);
+                }
+            });
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private List<PendingHistory> journaled = List.of();
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // Version conflicts and constraint failures surface here, before anything is journaled
+                try {
+                    entityManager.flush();
+                } catch (RuntimeException e) {
+                    // Translated as the commit would have, so callers still see e.g. an optimistic locking failure
+                    DataAccessException translated = JPA_DIALECT.translateExceptionIfPossible(e);
+                    throw translated != null ? translated : e;
+                }
+                // A failed append rolls the update back; what did get appended is aborted below
+                journaled = new ArrayList<>(pending.size());
+                for (PendingHistory entry : pending) {
+                    journaled.add(journal.append(entry));
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (journaled.isEmpty()) {
+                    return;
+                }
+                switch (status) {
+                    case STATUS_COMMITTED -> enqueue(journaled);
+                    case STATUS_ROLLED_BACK -> journal.abort(sequences(journaled));
+                    // The commit may or may not have happened; inserting as replayed checks the profile's version first
+                    default -> enqueue(journaled.stream().map(PendingHistory::asReplayed).toList());
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops queued entries of a profile that is being deleted and waits for an in-flight
+     * batch to finish, so the delete does not race the writer.
+     */
+    public void discard(Long profileId) {
+        if (mode == WriteMode.SYNC) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            List<PendingHistory> removed = new ArrayList<>();
+            queue.removeIf(entry -> entry.profileId().equals(profileId) && removed.add(entry));
+            if (journal != null && !removed.isEmpty()) {
+                journal.complete(sequences(removed));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public WriteMode getMode() {
+        return mode;
+    }
+
+    private void enqueue(List<PendingHistory> pending) {
+        try {
+            // A full queue blocks the caller, which is the backpressure we want
+            for (PendingHistory entry : pending) {
+                queue.put(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing history for profile {}{}", pending.get(0).profileId(),
+                    journal != null ? "; it stays in the journal" : "");
+        }
+    }
+
+    private void runWriter() {
+        List<PendingHistory> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingHistory first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // Whatever piled up while the previous batch was written goes out together
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("History writer failed on a batch of {} entries", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingHistory> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            flushLock.lock();
+            try {
+                Timer.Sample sample = Timer.start();
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(batch));
+                    completed(batch);
+                } catch (DataIntegrityViolationException e) {
+                    // One bad row fails the whole batch; store the rest one at a time
+                    storeOneByOne(batch);
+                }
+                sample.stop(flushTimer);
+                batchSizes.record(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    log.error("Giving up on {} history entries while the writer is stopped{}", batch.size(),
+                            journal != null ? "; they stay in the journal" : "", e);
+                    return;
+                }
+                if (attempt >= maxFlushAttempts) {
+                    stalledBatches.increment();
+                    log.error("History batch of {} entries failed {} times, storing it row by row", batch.size(),
+                            attempt, e);
+                    storeOneByOne(batch);
+                    return;
+                }
+                log.warn("History batch insert failed (attempt {} of {}), retrying", attempt, maxFlushAttempts, e);
+            } finally {
+                flushLock.unlock();
+            }
+            Thread.sleep(Math.min(MAX_RETRY_DELAY_MILLIS, RETRY_DELAY_MILLIS << (attempt - 1)));
+        }
+    }
+
+    // One attempt per row: rows the database rejects are dropped, rows that fail otherwise are parked
+    private void storeOneByOne(List<PendingHistory> batch) {
+        List<PendingHistory> done = new ArrayList<>(batch.size());
+        for (PendingHistory entry : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(List.of(entry)));
+                done.add(entry);
+            } catch (DataIntegrityViolationException rowFailure) {
+                dropped.increment();
+                done.add(entry);
+                log.warn("Dropping history entry {} of profile {}", entry.updateCount(), entry.profileId(), rowFailure);
+            } catch (RuntimeException rowFailure) {
+                if (journal == null) {
+                    dropped.increment();
+                    log.error("Dropping history entry {} of profile {}", entry.updateCount(), entry.profileId(),
+                            rowFailure);
+                    continue;
+                }
+                // Left outstanding, so the next start replays it
+                parked.increment();
+                log.error("Parking history entry {} of profile {} in the journal until the next start",
+                        entry.updateCount(), entry.profileId(), rowFailure);
+            }
+        }
+        completed(done);
+    }
+
+    private void completed(List<PendingHistory> entries) {
+        if (journal != null && !entries.isEmpty()) {
+            journal.complete(sequences(entries));
+        }
+    }
+
+    private static List<Long> sequences(List<PendingHistory> entries) {
+        return entries.stream().map(PendingHistory::sequence).toList();
+    }
+
+    private void insert(List<PendingHistory> batch) {
+        Set<Long> profileIds = new HashSet<>();
+        batch.forEach(entry -> profileIds.add(entry.profileId()));
+        // Profiles deleted since the entry was queued have nothing to attach it to
+        Map<Long, Integer> updateCounts = new HashMap<>();
+        profileRepository.findUpdateCounts(profileIds)
+                .forEach(profile -> updateCounts.put(profile.getId(), profile.getUpdateCount()));
+        for (PendingHistory entry : batch) {
+            Integer updateCount = updateCounts.get(entry.profileId());
+            if (updateCount == null) {
+                continue;
+            }
+            // The journal can hold entries of an update whose commit failed (the profile never
+            // reached that version) and entries that were stored just before a crash
+            if (entry.replayed() && (updateCount < entry.updateCount()
+                    || profileHistoryRepository.existsByProfileIdAndUpdateCount(entry.profileId(), entry.updateCount()))) {
+                continue;
+            }
+            entityManager.persist(entry.toEntity(entityManager.getReference(Profile.class, entry.profileId())));
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        // The writer drains the queue before it exits
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
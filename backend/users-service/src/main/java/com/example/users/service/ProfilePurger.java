@@ -0,0 +1,97 @@
+package com.example.users.service;
+
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Removes profiles with set-based deletes: one statement each for their history, phones,
+ * addresses and rows, however many of them there are. A hard delete uses it inside its
+ * own transaction; with users.delete.mode=soft the delete only marks the row and the
+ * scheduled {@link #purge()} reclaims marked rows later, a batch per transaction with a
+ * pause in between so a large backlog does not hold locks or flood replication in one go.
+ */
+@Component
+public class ProfilePurger {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfilePurger.class);
+
+    private final ProfileRepository profileRepository;
+    private final ProfileHistoryRepository profileHistoryRepository;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private final Duration pause;
+    private final Counter purged;
+
+    public ProfilePurger(
+            ProfileRepository profileRepository,
+            ProfileHistoryRepository profileHistoryRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${users.delete.purge-batch-size:500}") int batchSize,
+            @Value("${users.delete.purge-pause:PT0.2S}") Duration pause) {
+        this.profileRepository = profileRepository;
+        this.profileHistoryRepository = profileHistoryRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.purged = Counter.builder("users.profiles.purged")
+                .description("Soft-deleted profiles removed by the purge job")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Deletes the profiles and everything that references them; must run in a transaction.
+     */
+    public void deleteAll(Collection<Long> ids) {
+        profileHistoryRepository.deleteByProfileIds(ids);
+        profileRepository.deletePhones(ids);
+        profileRepository.deleteAddresses(ids);
+        profileRepository.deleteRows(ids);
+    }
+
+    /**
+     * @return the number of soft-deleted profiles removed
+     */
+    @Scheduled(initialDelayString = "${users.delete.purge-interval:PT5M}",
+            fixedDelayString = "${users.delete.purge-interval:PT5M}")
+    public int purge() {
+        int total = 0;
+        while (true) {
+            List<Long> batch = transaction.execute(status -> {
+                List<Long> ids = profileRepository.findSoftDeletedIds(batchSize);
+                if (!ids.isEmpty()) {
+                    deleteAll(ids);
+                }
+                return ids;
+            });
+            total += batch.size();
+            purged.increment(batch.size());
+            if (batch.size() < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Purged {} soft-deleted profiles", total);
+        }
+        return total;
+    }
+}
@@ -1,21 +1,58 @@
 package com.example.users.service;
 
+import com.example.users.dto.ProfileStatsResponse;
 import com.example.users.model.Profile;
 import com.example.users.model.ProfileHistory;
 import com.example.users.repository.ProfileHistoryRepository;
 import com.example.users.repository.ProfileRepository;
+import com.example.users.repository.ReadWriteRoutingDataSource;
+import com.example.users.util.HistoryIncompleteException;
 import com.example.users.util.PasswordUtil;
+import com.example.users.util.ProfileVersionMismatchException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.Hibernate;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ProfileService {
+
+    // One timer per operation tag (count, latency, exception) via the @Timed aspect
+    static final String OPERATIONS = "users.profile.operations";
     
     @Autowired
     private ProfileRepository profileRepository;
@@ -29,77 +66,484 @@ public class ProfileService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    public List<Profile> getAllProfiles() {
-        return profileRepository.findAll();
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private EmailBloomFilter emailBloomFilter;
+
+    @Autowired
+    private ProfileHistoryWriter profileHistoryWriter;
+
+    @Autowired
+    private ProfileHistoryCodec profileHistoryCodec;
+
+    @Autowired
+    private ProfileStatistics profileStatistics;
+
+    @Autowired
+    private ReadYourWrites readYourWrites;
+
+    @Autowired
+    private ProfilePurger profilePurger;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate writeTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Rows per round trip on the streaming cursors (MySQL needs useCursorFetch=true to honour it)
+    @Value("${users.stream.fetch-size:500}")
+    private int streamFetchSize;
+
+    // soft = mark the profile deleted and leave the rows to ProfilePurger
+    @Value("${users.delete.mode:hard}")
+    private String deleteMode;
+
+    @PostConstruct
+    void initTransactions() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    // Read-only methods run on the replica when one is configured (see ReadWriteRoutingDataSource)
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "list"})
+    public List<Profile> getProfilesAfter(long afterId, int limit) {
+        return withCollections(profileRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit)));
+    }
+
+    /**
+     * Search filters; null fields do not filter. Ages are whole years as of today and are
+     * matched through dob, which stays right as birthdays pass (the age column is only
+     * refreshed when a profile is written).
+     */
+    public record SearchCriteria(String namePrefix, Integer minAge, Integer maxAge, String sex, String emailDomain) {
+    }
+
+    /**
+     * One id-ordered keyset page of the profiles matching every given filter. Each filter
+     * has an index on profiles (see {@link Profile}), so the cost follows the number of
+     * matches rather than the size of the table.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "search"})
+    public List<Profile> searchProfiles(SearchCriteria criteria, long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Profile> query = cb.createQuery(Profile.class);
+        Root<Profile> profile = query.from(Profile.class);
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.greaterThan(profile.get("id"), afterId));
+        if (criteria.namePrefix() != null) {
+            // A prefix LIKE is an index range scan; MySQL's default collation makes it case-insensitive
+            where.add(cb.like(profile.get("name"), escapeLike(criteria.namePrefix()) + "%", '\\'));
+        }
+        LocalDate today = LocalDate.now();
+        if (criteria.minAge() != null) {
+            where.add(cb.lessThanOrEqualTo(profile.<LocalDate>get("dob"), today.minusYears(criteria.minAge())));
+        }
+        if (criteria.maxAge() != null) {
+            where.add(cb.greaterThan(profile.<LocalDate>get("dob"), today.minusYears(criteria.maxAge() + 1L)));
+        }
+        if (criteria.sex() != null) {
+            where.add(cb.equal(profile.get("sex"), criteria.sex()));
+        }
+        if (criteria.emailDomain() != null) {
+            String domain = criteria.emailDomain().startsWith("@") ? criteria.emailDomain() : "@" + criteria.emailDomain();
+            where.add(cb.equal(profile.get("emailDomain"), Profile.emailDomainOf(domain)));
+        }
+        query.select(profile).where(where.toArray(Predicate[]::new)).orderBy(cb.asc(profile.get("id")));
+        return withCollections(entityManager.createQuery(query).setMaxResults(limit).getResultList());
+    }
+
+    // Open-in-view is off, so callers map profiles after the session has closed. Loading the
+    // collections here costs one query per collection for up to BATCH_SIZE profiles
+    private static List<Profile> withCollections(List<Profile> profiles) {
+        profiles.forEach(ProfileService::withCollections);
+        return profiles;
+    }
+
+    private static Profile withCollections(Profile profile) {
+        Hibernate.initialize(profile.getPhones());
+        Hibernate.initialize(profile.getAddresses());
+        return profile;
+    }
+
+    // Cache misses load in a read-only transaction of their own, so a cache hit takes no connection
+    private Optional<Profile> loadWithCollections(Supplier<Optional<Profile>> query) {
+        return readOnlyTransaction.execute(status -> query.get().map(ProfileService::withCollections));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Counts by sex and age group from the incrementally maintained aggregates; see
+     * {@link ProfileStatistics}.
+     */
+    @Timed(value = OPERATIONS, extraTags = {"operation", "stats"})
+    public ProfileStatsResponse getStatistics() {
+        return profileStatistics.getStatistics();
+    }
+
+    /**
+     * Walks every profile in id order over a forward-only cursor. Rows are handed to the
+     * consumer in chunks of {@link Profile#BATCH_SIZE} so their phones and addresses load in
+     * one batch per chunk, and the persistence context is cleared after each chunk so it
+     * never grows with the table.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "stream"})
+    public void streamAllProfiles(Consumer<Profile> consumer) {
+        forEachChunk(chunk -> chunk.forEach(consumer));
     }
 
+    /**
+     * Same walk as {@link #streamAllProfiles}, optionally pairing each profile with its
+     * history; the history of a whole chunk is fetched with one query.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "export"})
+    public void exportProfiles(boolean includeHistory, BiConsumer<Profile, List<ProfileHistory>> consumer) {
+        forEachChunk(chunk -> {
+            Map<Long, List<ProfileHistory>> historyByProfile = includeHistory
+                    ? profileHistoryRepository.findByProfileIdInOrderByUpdateCountAsc(
+                            chunk.stream().map(Profile::getId).toList())
+                        .stream()
+                        .collect(Collectors.groupingBy(history -> history.getProfile().getId()))
+                    : Map.of();
+            chunk.forEach(profile -> consumer.accept(profile, historyByProfile.getOrDefault(profile.getId(), List.of())));
+        });
+    }
+
+    private void forEachChunk(Consumer<List<Profile>> chunkConsumer) {
+        try (Stream<Profile> profiles = entityManager
+                .createQuery("select p from Profile p order by p.id", Profile.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()) {
+            List<Profile> chunk = new ArrayList<>(Profile.BATCH_SIZE);
+            Iterator<Profile> iterator = profiles.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == Profile.BATCH_SIZE || !iterator.hasNext()) {
+                    chunkConsumer.accept(chunk);
+                    chunk.clear();
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+
+    @Timed(value = OPERATIONS, extraTags = {"operation", "get_by_id"})
     public Optional<Profile> getProfileById(Long id) {
-        return profileRepository.findById(id);
+        return ReadWriteRoutingDataSource.onPrimaryIf(readYourWrites.recentlyWritten(id), () -> profileCache.getById(
+                id, key -> loadWithCollections(() -> profileRepository.findById(key))));
     }
 
+    @Timed(value = OPERATIONS, extraTags = {"operation", "get_by_email"})
     public Optional<Profile> getProfileByEmail(String email) {
-        return profileRepository.findByEmail(email);
+        if (!emailBloomFilter.mightContain(email)) {
+            return emailBloomFilter.isAbsenceFinal() ? Optional.empty() : confirmAbsentEmail(email);
+        }
+        Optional<Profile> profile = ReadWriteRoutingDataSource.onPrimaryIf(readYourWrites.recentlyWritten(email),
+                () -> profileCache.getByEmail(email, key -> loadWithCollections(() -> profileRepository.findByEmail(key))));
+        if (profile.isEmpty()) {
+            emailBloomFilter.recordFalsePositive();
+        }
+        return profile;
     }
 
-    @Transactional
-    public Profile saveOrUpdateProfile(Profile profile) {
-        return profileRepository.save(profile);
+    // Another instance may have registered the email since this filter's last rebuild; the
+    // primary has it even if the replica does not yet
+    private Optional<Profile> confirmAbsentEmail(String email) {
+        Optional<Profile> profile = ReadWriteRoutingDataSource.onPrimary(() -> profileCache.getByEmail(
+                email, key -> loadWithCollections(() -> profileRepository.findByEmail(key))));
+        profile.ifPresent(found -> emailBloomFilter.recordMissedWrite(found.getEmail()));
+        return profile;
     }
-    
-    @Transactional
+
+    // Not transactional on purpose: hashing runs before the transaction so no connection is held
+    // during BCrypt. The save then runs in one, so ProfileStatistics can tell when it commits
+    @Timed(value = OPERATIONS, extraTags = {"operation", "create"})
     public Profile saveOrUpdateProfileWithPassword(Profile profile, String plainPassword) {
         String hashedPassword = passwordUtil.hashPassword(plainPassword);
         profile.setPassword(hashedPassword);
-        return profileRepository.save(profile);
+        return writeTransaction.execute(status -> {
+            Profile savedProfile = profileRepository.save(profile);
+            profileCache.invalidate(savedProfile.getId());
+            emailBloomFilter.add(savedProfile.getEmail());
+            readYourWrites.recordWrite(savedProfile.getId(), savedProfile.getEmail());
+            profileStatistics.recordCreated(savedProfile);
+            return savedProfile;
+        });
+    }
+
+    /**
+     * @param expectedUpdateCount the version the caller based the update on (from If-Match),
+     *                            or null to update whatever is stored
+     * @throws ProfileVersionMismatchException when the stored version differs
+     */
+    @Transactional
+    @Timed(value = OPERATIONS, extraTags = {"operation", "update"})
+    public Profile updateProfileWithHistory(Profile existingProfile, Profile updatedProfile, Integer expectedUpdateCount) {
+        Profile profile = loadForUpdate(existingProfile.getId(), expectedUpdateCount);
+        profileHistoryWriter.write(List.of(applyUpdate(profile, target -> copyFields(updatedProfile, target))));
+        return profile;
     }
 
+    /**
+     * Applies a partial update to the stored profile and records it in the history. Only the
+     * columns and phone/address rows that the changes touch are written.
+     */
     @Transactional
-    public Profile updateProfileWithHistory(Profile existingProfile, Profile updatedProfile, String previousValuesJson) {
-        // Increment update count
-        existingProfile.incrementUpdateCount();
-        
-        // Update profile fields
-        existingProfile.setName(updatedProfile.getName());
-        existingProfile.setEmail(updatedProfile.getEmail());
-        existingProfile.setDob(updatedProfile.getDob());
-        existingProfile.setAge(updatedProfile.getAge());
-        existingProfile.setSex(updatedProfile.getSex());
-        existingProfile.setPhones(updatedProfile.getPhones());
-        existingProfile.setAddresses(updatedProfile.getAddresses());
-        
-        // Save the updated profile
-        Profile savedProfile = profileRepository.save(existingProfile);
-        
-        // Create history entry
-        ProfileHistory history = new ProfileHistory(
-            savedProfile, 
-            previousValuesJson, 
-            savedProfile.getUpdateCount()
+    @Timed(value = OPERATIONS, extraTags = {"operation", "patch"})
+    public Profile patchProfileWithHistory(Long id, Consumer<Profile> changes, Integer expectedUpdateCount) {
+        Profile profile = loadForUpdate(id, expectedUpdateCount);
+        profileHistoryWriter.write(List.of(applyUpdate(profile, changes)));
+        return profile;
+    }
+
+    /**
+     * Applies every update in one transaction; the profile updates, collection rows and
+     * history inserts are flushed together as JDBC batches.
+     */
+    @Transactional
+    @Timed(value = OPERATIONS, extraTags = {"operation", "batch_update"})
+    public List<Profile> updateProfilesWithHistory(List<ProfileUpdate> updates) {
+        // One query for the whole batch; the managed rows are then edited as in loadForUpdate
+        Map<Long, Profile> profiles = profileRepository.findAllById(
+                        updates.stream().map(update -> update.existingProfile().getId()).toList())
+                .stream().collect(Collectors.toMap(Profile::getId, Function.identity()));
+        List<Profile> savedProfiles = new ArrayList<>(updates.size());
+        List<ProfileHistory> history = new ArrayList<>(updates.size());
+        for (ProfileUpdate update : updates) {
+            Long id = update.existingProfile().getId();
+            Profile profile = profiles.get(id);
+            if (profile == null) {
+                throw new EmptyResultDataAccessException("Profile " + id + " not found", 1);
+            }
+            history.add(applyUpdate(profile, target -> copyFields(update.updatedProfile(), target)));
+            savedProfiles.add(profile);
+        }
+        profileHistoryWriter.write(history);
+        return savedProfiles;
+    }
+
+    // Updates edit the managed row rather than a cached copy, so Hibernate's dirty checking
+    // can diff the phone/address sets and write only what changed
+    private Profile loadForUpdate(Long id, Integer expectedUpdateCount) {
+        Profile profile = profileRepository.findById(id)
+                .orElseThrow(() -> new EmptyResultDataAccessException("Profile " + id + " not found", 1));
+        if (expectedUpdateCount != null && expectedUpdateCount != profile.getUpdateCount()) {
+            throw new ProfileVersionMismatchException(id, expectedUpdateCount, profile.getUpdateCount());
+        }
+        return profile;
+    }
+
+    private ProfileHistory applyUpdate(Profile profile, Consumer<Profile> changes) {
+        Map<String, Object> previousValues = profileHistoryCodec.snapshot(profile);
+        String sexBefore = profile.getSex();
+        LocalDate dobBefore = profile.getDob();
+        changes.accept(profile);
+        // Hibernate bumps the version when it flushes a changed row; an update that changed
+        // nothing still counts as one, so force the bump for it
+        if (previousValues.equals(profileHistoryCodec.snapshot(profile))) {
+            entityManager.lock(profile, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        }
+        profileCache.invalidate(profile.getId());
+        emailBloomFilter.add(profile.getEmail());
+        readYourWrites.recordWrite(profile.getId(), profile.getEmail());
+        if (previousValues.get("email") instanceof String previousEmail && !previousEmail.equalsIgnoreCase(profile.getEmail())) {
+            // A lookup by the old email must not find the replica's stale row either
+            readYourWrites.recordWrite(profile.getId(), previousEmail);
+        }
+        profileStatistics.recordChanged(sexBefore, dobBefore, profile);
+        return newHistoryEntry(profile, previousValues, profile.getUpdateCount() + 1);
+    }
+
+    private static void copyFields(Profile source, Profile target) {
+        target.setName(source.getName());
+        target.setEmail(source.getEmail());
+        target.setDob(source.getDob());
+        target.setAge(source.getAge());
+        target.setSex(source.getSex());
+        target.replacePhones(source.getPhones());
+        target.replaceAddresses(source.getAddresses());
+    }
+
+    private ProfileHistory newHistoryEntry(Profile savedProfile, Map<String, Object> previousValues, int updateCount) {
+        boolean checkpoint = profileHistoryCodec.isCheckpoint(updateCount);
+        return new ProfileHistory(
+            savedProfile,
+            profileHistoryCodec.encode(previousValues, profileHistoryCodec.snapshot(savedProfile), checkpoint),
+            checkpoint,
+            updateCount
         );
-        profileHistoryRepository.save(history);
-        
-        return savedProfile;
     }
 
+    /**
+     * Hashes the passwords in parallel on the hashing pool, then inserts every profile in a
+     * single transaction so the rows go out as JDBC batches. Callers are expected to have
+     * ruled out duplicate emails already.
+     */
+    @Timed(value = OPERATIONS, extraTags = {"operation", "batch_create"})
+    public List<Profile> createProfilesBatch(List<Profile> profiles, List<String> plainPasswords) {
+        List<String> hashedPasswords = passwordUtil.hashPasswords(plainPasswords);
+        for (int i = 0; i < profiles.size(); i++) {
+            profiles.get(i).setPassword(hashedPasswords.get(i));
+        }
+        return writeTransaction.execute(status -> {
+            List<Profile> savedProfiles = profileRepository.saveAll(profiles);
+            savedProfiles.forEach(profile -> {
+                emailBloomFilter.add(profile.getEmail());
+                readYourWrites.recordWrite(profile.getId(), profile.getEmail());
+                profileStatistics.recordCreated(profile);
+            });
+            return savedProfiles;
+        });
+    }
+
+    // The batch checks below decide what to write, so they read the primary rather than a lagging replica
+    public List<Profile> getProfilesByIds(Collection<Long> ids) {
+        return ReadWriteRoutingDataSource.onPrimary(() -> profileRepository.findAllById(ids));
+    }
+
+    public List<Profile> getProfilesByEmails(Collection<String> emails) {
+        return ReadWriteRoutingDataSource.onPrimary(() -> profileRepository.findByEmailIn(emails));
+    }
+
+    @Timed(value = OPERATIONS, extraTags = {"operation", "verify_password"})
     public boolean verifyPassword(String plainPassword, String hashedPassword) {
         return passwordUtil.matches(plainPassword, hashedPassword);
     }
 
+    // For a CompletionStage the @Timed aspect stops the timer when the stage completes, so this
+    // records the queueing and the BCrypt check, not just the submit
+    @Timed(value = OPERATIONS, extraTags = {"operation", "verify_password"})
+    public CompletableFuture<Boolean> verifyPasswordAsync(String plainPassword, String hashedPassword) {
+        return passwordUtil.matchesAsync(plainPassword, hashedPassword);
+    }
+
+    /**
+     * A fixed handful of statements however long the profile's history: one to read what the
+     * caches and statistics need, then either a single update marking it deleted (soft mode)
+     * or set-based deletes of its history, collections and row.
+     *
+     * @return false when there was no such profile
+     */
     @Transactional
-    public void deleteProfile(Long id) {
-        // First delete history to avoid foreign key constraints
-        List<ProfileHistory> history = profileHistoryRepository.findByProfileId(id);
-        profileHistoryRepository.deleteAll(history);
-        
-        // Then delete the profile
-        profileRepository.deleteById(id);
+    @Timed(value = OPERATIONS, extraTags = {"operation", "delete"})
+    public boolean deleteProfile(Long id) {
+        Optional<ProfileRepository.DeletedProfile> profile = profileRepository.findDeletedProfileById(id);
+        if (profile.isEmpty()) {
+            return false;
+        }
+        profileHistoryWriter.discard(id);
+        if ("soft".equalsIgnoreCase(deleteMode)) {
+            profileRepository.markDeleted(id, Instant.now());
+        } else {
+            profilePurger.deleteAll(List.of(id));
+        }
+        profileCache.invalidate(id);
+        readYourWrites.recordWrite(id, profile.get().getEmail());
+        profileStatistics.recordDeleted(profile.get().getSex(), profile.get().getDob());
+        return true;
     }
 
-    public List<ProfileHistory> getProfileHistory(Long profileId) {
-        return profileHistoryRepository.findByProfileIdOrderByUpdatedAtDesc(profileId);
+    /**
+     * One newest-first page of history; pass the last row's date and id to get the next one.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "history_page"})
+    public List<ProfileHistory> getProfileHistoryPage(Long profileId, LocalDate beforeDate, Long beforeId, int limit) {
+        return ReadWriteRoutingDataSource.onPrimaryIf(readYourWrites.recentlyWritten(profileId), () -> beforeDate == null
+                ? profileHistoryRepository.findNewest(profileId, Limit.of(limit))
+                : profileHistoryRepository.findOlderThan(profileId, beforeDate, beforeId, Limit.of(limit)));
+    }
+
+    /**
+     * The profile as it stood at the end of the given day: the version left by the last
+     * update made on or before it, or the profile as created when there was none.
+     *
+     * @return empty when the profile does not exist or did not exist yet on that day
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "as_of"})
+    public Optional<Profile> getProfileAsOf(Long id, LocalDate date) {
+        return ReadWriteRoutingDataSource.onPrimaryIf(readYourWrites.recentlyWritten(id), () -> {
+            Optional<Profile> current = getProfileById(id);
+            if (current.isEmpty()) {
+                return current;
+            }
+            LocalDate created = creationDate(current.get());
+            if (created != null && date.isBefore(created)) {
+                return Optional.empty();
+            }
+            Integer updateCount = profileHistoryRepository.findLastUpdateCountOnOrBefore(id, date);
+            return getProfileAtVersion(id, updateCount == null ? 0 : updateCount);
+        });
+    }
+
+    // Profiles from before created_at existed fall back to the day of their first update, the
+    // earliest they are known to have existed; with no history either, null (always existed)
+    private LocalDate creationDate(Profile profile) {
+        if (profile.getCreatedAt() != null) {
+            return LocalDate.ofInstant(profile.getCreatedAt(), ZoneId.systemDefault());
+        }
+        return profileHistoryRepository.findFirstUpdatedAt(profile.getId());
+    }
+
+    /**
+     * Rebuilds the profile as it was right after update number updateCount (0 is the profile
+     * as created) by stepping the current values back through the history deltas, starting
+     * from the nearest full snapshot above that version when there is one.
+     *
+     * @return empty when the profile does not exist or never reached that version
+     * @throws IllegalArgumentException when a history entry on the way cannot be read
+     * @throws HistoryIncompleteException when an entry on the way is missing, rather than
+     *                                    rebuilding a version that never existed
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = OPERATIONS, extraTags = {"operation", "at_version"})
+    public Optional<Profile> getProfileAtVersion(Long id, int updateCount) {
+        return ReadWriteRoutingDataSource.onPrimaryIf(readYourWrites.recentlyWritten(id),
+                () -> rebuildVersion(id, updateCount));
+    }
+
+    private Optional<Profile> rebuildVersion(Long id, int updateCount) {
+        Optional<Profile> current = getProfileById(id);
+        if (current.isEmpty() || updateCount < 0 || updateCount > current.get().getUpdateCount()) {
+            return Optional.empty();
+        }
+        Profile profile = current.get();
+        if (updateCount == profile.getUpdateCount()) {
+            return current;
+        }
+        Integer fullEntry = profileHistoryRepository.findFirstFullEntryAfter(id, updateCount);
+        int from = fullEntry != null ? Math.min(fullEntry, profile.getUpdateCount()) : profile.getUpdateCount();
+        List<ProfileHistory> entries = profileHistoryRepository
+                .findByProfileIdAndUpdateCountBetweenOrderByUpdateCountDesc(id, updateCount + 1, from);
+        // Every update writes exactly one entry, so any other count means the range has a gap
+        if (entries.size() != from - updateCount) {
+            throw new HistoryIncompleteException(id, updateCount, from - updateCount, entries.size());
+        }
+        Map<String, Object> state = profileHistoryCodec.snapshot(profile);
+        entries.forEach(entry -> profileHistoryCodec.applyReverse(state, entry.getPreviousValues(), entry.getCheckpoint()));
+        return Optional.of(profileHistoryCodec.toProfile(id, updateCount, state));
     }
 
     public String convertToJson(Profile profile) throws JsonProcessingException {
         return objectMapper.writeValueAsString(profile);
     }
-}
\ No newline at end of file
+
+    public record ProfileUpdate(Profile existingProfile, Profile updatedProfile) {
+    }
+}
@@ -0,0 +1,440 @@
+package com.example.users.service;
+
+import com.example.users.dto.ProfileStatsResponse;
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.repository.ReadWriteRoutingDataSource;
+import com.example.users.util.FenwickTree;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Profile counts by sex and age group, answered from in-memory aggregates instead of a scan
+ * of the profiles table. Each sex has a Fenwick tree of profile counts indexed by date of
+ * birth, so the profiles in an age group are the difference of two prefix sums at the
+ * group's birthday cutoffs for today. An answer costs a fixed number of array reads however
+ * many profiles there are, and ages move on with the calendar rather than with writes.
+ * <p>
+ * ProfileService reports every create, update and delete once its transaction commits. A
+ * scheduled reconciliation recounts from the database with one grouped query over the
+ * (sex, dob) index and replaces the aggregates, which picks up writes that bypass the
+ * service (the CSV import, manual SQL).
+ * <p>
+ * The recount runs on the primary. Every write takes a ticket just before it commits. The
+ * recount first waits for the commits already under way, so its query sees every write
+ * up to the last ticket issued. Deltas that arrive meanwhile are buffered and, once the
+ * query returns, applied to the new aggregates only if their ticket is later. The one
+ * write still counted twice, until the next reconciliation, is one that starts committing
+ * between that wait and the moment the query takes its snapshot.
+ */
+@Component
+public class ProfileStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileStatistics.class);
+
+    static final String UNKNOWN = "unknown";
+    private static final String OTHER_SEX = "other";
+
+    // Dates of birth outside this range count as unknown age
+    private static final LocalDate FIRST_DOB = LocalDate.of(1900, 1, 1);
+    private static final int DOB_DAYS = (int) ChronoUnit.DAYS.between(FIRST_DOB, LocalDate.of(2100, 1, 1));
+    // A commit stuck longer than this fails the recount rather than holding it open
+    private static final long COMMIT_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ProfileRepository profileRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int[] ageGroupStarts;
+    private final List<String> ageGroupLabels;
+    private final int maxSexValues;
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+    private final Timer reconcileTimer;
+    private final AtomicLong lastDrift = new AtomicLong();
+
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition commitEnded = commitLock.newCondition();
+    // Tickets of the writes between their commit and their delta; guarded by commitLock
+    private final TreeSet<Long> committing = new TreeSet<>();
+    private long lastTicket;
+
+    // Guards the hand-over: a delta goes to the live aggregates and, during a recount, to
+    // "pending", and the recount swaps in the new aggregates and clears "pending" in one step
+    private final ReentrantLock deltaLock = new ReentrantLock();
+    private List<PendingDelta> pending;
+    private volatile Aggregates current;
+    private volatile Instant reconciledAt;
+
+    private record PendingDelta(long ticket, Consumer<Aggregates> delta) {
+    }
+
+    public ProfileStatistics(
+            ProfileRepository profileRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${users.stats.age-groups:18,25,35,45,55,65}") int[] ageGroupBoundaries,
+            @Value("${users.stats.max-sex-values:8}") int maxSexValues) {
+        this.profileRepository = profileRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxSexValues = maxSexValues;
+
+        this.ageGroupStarts = new int[ageGroupBoundaries.length + 1];
+        System.arraycopy(ageGroupBoundaries, 0, ageGroupStarts, 1, ageGroupBoundaries.length);
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < ageGroupStarts.length; i++) {
+            if (i > 0 && ageGroupStarts[i] <= ageGroupStarts[i - 1]) {
+                throw new IllegalArgumentException("users.stats.age-groups must be positive and increasing");
+            }
+            labels.add(i + 1 < ageGroupStarts.length
+                    ? ageGroupStarts[i] + "-" + (ageGroupStarts[i + 1] - 1)
+                    : ageGroupStarts[i] + "+");
+        }
+        this.ageGroupLabels = List.copyOf(labels);
+
+        this.reconcileTimer = Timer.builder("users.profile_stats.reconcile")
+                .description("Time to recount the profile statistics from the profiles table")
+                .register(meterRegistry);
+        Gauge.builder("users.profile_stats.drift", lastDrift, AtomicLong::get)
+                .description("Profiles the last reconciliation moved to a different sex or age group")
+                .register(meterRegistry);
+    }
+
+    /** Counts of one sex by date of birth, plus those whose dob is missing or out of range. */
+    private static final class SexCounts {
+        final String label;
+        final FenwickTree byDob = new FenwickTree(DOB_DAYS);
+        final LongAdder undated = new LongAdder();
+
+        SexCounts(String label) {
+            this.label = label;
+        }
+    }
+
+    private final class Aggregates {
+        // Keyed case-insensitively, as MySQL's collation groups the column
+        final Map<String, SexCounts> bySex = new ConcurrentHashMap<>();
+
+        void add(String sex, LocalDate dob, long delta) {
+            SexCounts counts = countsFor(sex);
+            int day = dob == null ? -1 : (int) ChronoUnit.DAYS.between(FIRST_DOB, dob);
+            if (day < 0 || day >= DOB_DAYS) {
+                counts.undated.add(delta);
+            } else {
+                counts.byDob.add(day, delta);
+            }
+        }
+
+        // sex is free text; once maxSexValues spellings are tracked the rest share one entry,
+        // which bounds memory at one tree (~600 KB) per value
+        SexCounts countsFor(String sex) {
+            String label = sex == null || sex.isBlank() ? UNKNOWN : sex.trim();
+            String key = label.toLowerCase(Locale.ROOT);
+            SexCounts counts = bySex.get(key);
+            if (counts != null) {
+                return counts;
+            }
+            if (bySex.size() >= maxSexValues) {
+                key = OTHER_SEX;
+                label = OTHER_SEX;
+            }
+            String finalLabel = label;
+            return bySex.computeIfAbsent(key, k -> new SexCounts(finalLabel));
+        }
+    }
+
+    public void recordCreated(Profile profile) {
+        String sex = profile.getSex();
+        LocalDate dob = profile.getDob();
+        afterCommit(aggregates -> aggregates.add(sex, dob, 1));
+    }
+
+    /**
+     * @param sexBefore the profile's sex before the update
+     * @param dobBefore its date of birth before the update
+     */
+    public void recordChanged(String sexBefore, LocalDate dobBefore, Profile profile) {
+        String sex = profile.getSex();
+        LocalDate dob = profile.getDob();
+        if (Objects.equals(sexBefore, sex) && Objects.equals(dobBefore, dob)) {
+            return;
+        }
+        afterCommit(aggregates -> {
+            aggregates.add(sexBefore, dobBefore, -1);
+            aggregates.add(sex, dob, 1);
+        });
+    }
+
+    public void recordDeleted(String sex, LocalDate dob) {
+        afterCommit(aggregates -> aggregates.add(sex, dob, -1));
+    }
+
+    // A rolled-back write must not move the counts. The delta is applied before the ticket is
+    // released, so a recount that waited for the commit finds the delta already buffered
+    private void afterCommit(Consumer<Aggregates> delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Committed already, perhaps before a running recount's query; counted as unseen
+            apply(Long.MAX_VALUE, delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long ticket;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                ticket = beginCommit();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        apply(ticket, delta);
+                    }
+                } finally {
+                    endCommit(ticket);
+                }
+            }
+        });
+    }
+
+    private long beginCommit() {
+        commitLock.lock();
+        try {
+            long ticket = ++lastTicket;
+            committing.add(ticket);
+            return ticket;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void endCommit(long ticket) {
+        commitLock.lock();
+        try {
+            if (committing.remove(ticket)) {
+                commitEnded.signalAll();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every write that has started committing has finished, so a query issued
+     * next sees all of them.
+     *
+     * @return the last ticket issued before the wait
+     */
+    private long awaitCommitsUnderWay() {
+        commitLock.lock();
+        try {
+            long seen = lastTicket;
+            long remaining = COMMIT_WAIT_NANOS;
+            while (!committing.isEmpty() && committing.first() <= seen) {
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Commits still under way after "
+                            + TimeUnit.NANOSECONDS.toSeconds(COMMIT_WAIT_NANOS) + " s");
+                }
+                remaining = commitEnded.awaitNanos(remaining);
+            }
+            return seen;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for commits", e);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void apply(long ticket, Consumer<Aggregates> delta) {
+        deltaLock.lock();
+        try {
+            if (pending != null) {
+                pending.add(new PendingDelta(ticket, delta));
+            }
+            Aggregates aggregates = current;
+            if (aggregates != null) {
+                delta.accept(aggregates);
+            }
+        } finally {
+            deltaLock.unlock();
+        }
+    }
+
+    private void setPending(List<PendingDelta> deltas) {
+        deltaLock.lock();
+        try {
+            pending = deltas;
+        } finally {
+            deltaLock.unlock();
+        }
+    }
+
+    /**
+     * Counts as of today. The first call after startup waits for the initial count if the
+     * scheduled one has not finished yet.
+     */
+    public ProfileStatsResponse getStatistics() {
+        if (current == null) {
+            reconcile();
+        }
+        Aggregates aggregates = current;
+        if (aggregates == null) {
+            throw new IllegalStateException("Profile statistics are not available yet");
+        }
+        LocalDate today = LocalDate.now();
+        Map<String, Long> bySex = new LinkedHashMap<>();
+        Map<String, Long> byAgeGroup = new LinkedHashMap<>();
+        Map<String, Map<String, Long>> bySexAndAgeGroup = new LinkedHashMap<>();
+        ageGroupLabels.forEach(label -> byAgeGroup.put(label, 0L));
+        byAgeGroup.put(UNKNOWN, 0L);
+        long total = 0;
+        List<SexCounts> sexes = new ArrayList<>(aggregates.bySex.values());
+        sexes.sort(Comparator.comparing(counts -> counts.label));
+        for (SexCounts counts : sexes) {
+            Map<String, Long> groups = ageGroups(counts, today);
+            long sexTotal = groups.values().stream().mapToLong(Long::longValue).sum();
+            if (sexTotal == 0) {
+                continue;
+            }
+            total += sexTotal;
+            bySex.put(counts.label, sexTotal);
+            bySexAndAgeGroup.put(counts.label, groups);
+            groups.forEach((label, count) -> byAgeGroup.merge(label, count, Long::sum));
+        }
+        ProfileStatsResponse response = new ProfileStatsResponse();
+        response.setTotal(total);
+        response.setAsOf(today);
+        response.setReconciledAt(reconciledAt);
+        response.setBySex(bySex);
+        response.setByAgeGroup(byAgeGroup);
+        response.setBySexAndAgeGroup(bySexAndAgeGroup);
+        return response;
+    }
+
+    private Map<String, Long> ageGroups(SexCounts counts, LocalDate today) {
+        Map<String, Long> groups = new LinkedHashMap<>();
+        long dated = counts.byDob.prefixSum(DOB_DAYS - 1);
+        long previous = atLeast(counts, today, ageGroupStarts[0]);
+        // Born after today: a dob typo, reported with the undated ones
+        long unknown = counts.undated.sum() + dated - previous;
+        for (int i = 0; i < ageGroupStarts.length; i++) {
+            long older = i + 1 < ageGroupStarts.length ? atLeast(counts, today, ageGroupStarts[i + 1]) : 0;
+            groups.put(ageGroupLabels.get(i), previous - older);
+            previous = older;
+        }
+        groups.put(UNKNOWN, unknown);
+        return groups;
+    }
+
+    // Profiles at least this many whole years old today: those born on or before today minus that many years
+    private static long atLeast(SexCounts counts, LocalDate today, int years) {
+        return counts.byDob.prefixSum((int) ChronoUnit.DAYS.between(FIRST_DOB, today.minusYears(years)));
+    }
+
+    /**
+     * Recounts every profile from the database and replaces the aggregates. Also runs after
+     * a CSV import.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${users.stats.reconcile-interval:PT15M}")
+    public void reconcile() {
+        reconcileLock.lock();
+        try {
+            long start = System.nanoTime();
+            setPending(new ArrayList<>());
+            long[] counted = {0};
+            // On the primary, which has every commit the tickets stand for; a replica may not yet
+            List<ProfileRepository.DemographicCount> rows = ReadWriteRoutingDataSource.onPrimary(
+                    () -> readOnlyTransaction.execute(status -> {
+                        counted[0] = awaitCommitsUnderWay();
+                        return profileRepository.countBySexAndDob();
+                    }));
+            Aggregates next = new Aggregates();
+            // Claim entries for the most common sexes first, so the rare ones are the ones folded into "other"
+            Map<String, Long> sexTotals = new HashMap<>();
+            rows.forEach(row -> sexTotals.merge(row.getSex() == null ? "" : row.getSex(), row.getProfiles(), Long::sum));
+            sexTotals.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(entry -> next.countsFor(entry.getKey()));
+            rows.forEach(row -> next.add(row.getSex(), row.getDob(), row.getProfiles()));
+
+            Aggregates previous;
+            deltaLock.lock();
+            try {
+                // Writes that started committing after the wait, which the query did not see
+                pending.stream().filter(delta -> delta.ticket() > counted[0])
+                        .forEach(delta -> delta.delta().accept(next));
+                previous = current;
+                current = next;
+                pending = null;
+            } finally {
+                deltaLock.unlock();
+            }
+            reconciledAt = Instant.now();
+            long elapsed = System.nanoTime() - start;
+            reconcileTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            if (previous != null) {
+                long drift = drift(previous, next);
+                lastDrift.set(drift);
+                if (drift > 0) {
+                    log.info("Profile statistics reconciled in {} ms; corrected {} misplaced counts",
+                            TimeUnit.NANOSECONDS.toMillis(elapsed), drift);
+                }
+            }
+        } catch (RuntimeException e) {
+            setPending(null);
+            log.warn("Profile statistics reconciliation failed; keeping the previous counts", e);
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    // Sum over sex and age group of |before - after|; 0 when the incremental counts were right
+    private long drift(Aggregates before, Aggregates after) {
+        LocalDate today = LocalDate.now();
+        Map<String, Map<String, Long>> expected = new HashMap<>();
+        after.bySex.forEach((key, counts) -> expected.put(key, ageGroups(counts, today)));
+        long drift = 0;
+        for (Map.Entry<String, SexCounts> entry : before.bySex.entrySet()) {
+            Map<String, Long> actual = ageGroups(entry.getValue(), today);
+            Map<String, Long> recounted = expected.remove(entry.getKey());
+            for (Map.Entry<String, Long> group : actual.entrySet()) {
+                long recount = recounted == null ? 0 : recounted.getOrDefault(group.getKey(), 0L);
+                drift += Math.abs(group.getValue() - recount);
+            }
+        }
+        for (Map<String, Long> groups : expected.values()) {
+            drift += groups.values().stream().mapToLong(Long::longValue).sum();
+        }
+        return drift;
+    }
+}
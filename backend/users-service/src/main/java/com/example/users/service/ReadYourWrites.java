@@ -0,0 +1,74 @@
+package com.example.users.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Profiles this instance wrote within the last read-your-writes window, by id and by email.
+ * Reads of them go to the primary instead of a replica that may not have applied the write
+ * yet; that also keeps a lagging replica from putting the old row back into ProfileCache.
+ * The window should cover the replica's usual lag. Writes made through another instance are
+ * not known here, so a client switching instances right after a write can still read the
+ * replica's older copy.
+ */
+@Component
+public class ReadYourWrites {
+
+    private final Cache<Object, Boolean> recentWrites;
+
+    public ReadYourWrites(@Value("${users.datasource.read-your-writes-window:5s}") Duration window) {
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    /**
+     * Marks the profile now and again once the surrounding transaction completes, so the
+     * window runs from the commit.
+     */
+    public void recordWrite(Long id, String email) {
+        put(id, email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    put(id, email);
+                }
+            });
+        }
+    }
+
+    public boolean recentlyWritten(Long id) {
+        return id != null && recentWrites.getIfPresent(id) != null;
+    }
+
+    public boolean recentlyWritten(String email) {
+        return email != null && recentWrites.getIfPresent(emailKey(email)) != null;
+    }
+
+    public void clear() {
+        recentWrites.invalidateAll();
+    }
+
+    private void put(Long id, String email) {
+        if (id != null) {
+            recentWrites.put(id, Boolean.TRUE);
+        }
+        if (email != null) {
+            recentWrites.put(emailKey(email), Boolean.TRUE);
+        }
+    }
+
+    // MySQL's default collation compares emails case-insensitively
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
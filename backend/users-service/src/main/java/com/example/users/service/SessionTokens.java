@@ -0,0 +1,180 @@
+package com.example.users.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Issues and checks the session tokens login hands out, so a client proves who it is with
+ * an HMAC check instead of another BCrypt verification. A token is
+ * "&lt;key id&gt;.&lt;profile id&gt;.&lt;expiry, epoch seconds&gt;.&lt;HMAC-SHA256 of the rest&gt;", the
+ * signature base64url-encoded; nothing is stored server-side, so every instance sharing the
+ * keys accepts it until it expires.
+ * <p>
+ * users.session.keys lists "id:base64-secret" pairs, newest first. The first signs new
+ * tokens and all of them verify, so a key is rotated by putting its replacement in front and
+ * removing it once the tokens it signed have expired (one ttl later). Without keys each
+ * instance signs with a random key of its own, which only suits a single instance.
+ */
+@Component
+public class SessionTokens {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionTokens.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public record Issued(String token, Instant expiresAt) {
+    }
+
+    // Mac instances are not thread-safe and slow to look up. Each call clones one initialised
+    // per key instead: with a virtual thread per request a per-thread cache would miss every
+    // time. The prototype is never used itself, so concurrent clones read a state nobody
+    // changes. prototype is null when the provider cannot clone, and each call then looks one up
+    private record SigningKey(String id, SecretKeySpec spec, Mac prototype) {
+
+        Mac mac() {
+            try {
+                return prototype != null ? (Mac) prototype.clone() : newMac(spec);
+            } catch (CloneNotSupportedException e) {
+                return newMac(spec);
+            }
+        }
+    }
+
+    private final Map<String, SigningKey> keysById = new LinkedHashMap<>();
+    private final SigningKey signingKey;
+    private final Duration ttl;
+    private final Counter validTokens;
+    private final Counter invalidTokens;
+    private final Counter expiredTokens;
+
+    public SessionTokens(
+            @Value("${users.session.keys:}") String keys,
+            @Value("${users.session.ttl:12h}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        for (String entry : keys.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalStateException("users.session.keys entries must be id:base64-secret");
+            }
+            String id = entry.substring(0, colon).trim();
+            if (!id.matches("[A-Za-z0-9_-]+")) {
+                throw new IllegalStateException("Session key id must be letters, digits, '-' or '_': " + id);
+            }
+            byte[] secret = Base64.getDecoder().decode(entry.substring(colon + 1).trim());
+            if (secret.length < MIN_KEY_BYTES) {
+                throw new IllegalStateException("Session key " + id + " is shorter than " + MIN_KEY_BYTES + " bytes");
+            }
+            keysById.put(id, signingKey(id, secret));
+        }
+        if (keysById.isEmpty()) {
+            log.warn("users.session.keys is not set; signing session tokens with a random key only this instance accepts");
+            byte[] secret = new byte[MIN_KEY_BYTES];
+            new SecureRandom().nextBytes(secret);
+            keysById.put("local", signingKey("local", secret));
+        }
+        this.signingKey = keysById.values().iterator().next();
+        this.ttl = ttl;
+        this.validTokens = validations(meterRegistry, "valid");
+        this.invalidTokens = validations(meterRegistry, "invalid");
+        this.expiredTokens = validations(meterRegistry, "expired");
+    }
+
+    public Issued issue(Long profileId) {
+        return issue(profileId, Instant.now().plus(ttl));
+    }
+
+    Issued issue(Long profileId, Instant expiresAt) {
+        String payload = signingKey.id() + "." + profileId + "." + expiresAt.getEpochSecond();
+        return new Issued(payload + "." + ENCODER.encodeToString(sign(signingKey, payload)), expiresAt);
+    }
+
+    /**
+     * @return the profile the token was issued to, or empty when it is malformed, signed
+     *         with a key that is no longer configured, tampered with or expired
+     */
+    public Optional<Long> verify(String token) {
+        int keyEnd = token.indexOf('.');
+        int idEnd = keyEnd < 0 ? -1 : token.indexOf('.', keyEnd + 1);
+        int expiryEnd = idEnd < 0 ? -1 : token.indexOf('.', idEnd + 1);
+        SigningKey key = keyEnd < 0 ? null : keysById.get(token.substring(0, keyEnd));
+        if (expiryEnd < 0 || key == null) {
+            invalidTokens.increment();
+            return Optional.empty();
+        }
+        long profileId;
+        long expiresAt;
+        byte[] signature;
+        try {
+            profileId = Long.parseLong(token, keyEnd + 1, idEnd, 10);
+            expiresAt = Long.parseLong(token, idEnd + 1, expiryEnd, 10);
+            signature = DECODER.decode(token.substring(expiryEnd + 1));
+        } catch (IllegalArgumentException e) {
+            invalidTokens.increment();
+            return Optional.empty();
+        }
+        // Constant-time comparison, so response timing does not reveal how much of a forged signature was right
+        if (!MessageDigest.isEqual(signature, sign(key, token.substring(0, expiryEnd)))) {
+            invalidTokens.increment();
+            return Optional.empty();
+        }
+        if (Instant.now().getEpochSecond() >= expiresAt) {
+            expiredTokens.increment();
+            return Optional.empty();
+        }
+        validTokens.increment();
+        return Optional.of(profileId);
+    }
+
+    private static byte[] sign(SigningKey key, String payload) {
+        return key.mac().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static SigningKey signingKey(String id, byte[] secret) {
+        SecretKeySpec spec = new SecretKeySpec(secret, ALGORITHM);
+        Mac prototype = newMac(spec);
+        try {
+            prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            prototype = null;
+        }
+        return new SigningKey(id, spec, prototype);
+    }
+
+    private static Mac newMac(SecretKeySpec spec) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(spec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + ALGORITHM, e);
+        }
+    }
+
+    private static Counter validations(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("users.session.validations").tag("outcome", outcome)
+                .description("Session tokens checked, by outcome")
+                .register(meterRegistry);
+    }
+}
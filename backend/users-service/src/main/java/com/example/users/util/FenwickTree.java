@@ -0,0 +1,39 @@
+package com.example.users.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Binary indexed tree of counts over positions 0..size-1: adding to one position and
+ * summing a prefix both take O(log size). Cells are updated with atomic adds on an
+ * {@link AtomicLongArray}, so concurrent {@link #add} and {@link #prefixSum} calls need no
+ * locking; a sum taken while adds are in flight may include only some of them.
+ */
+public class FenwickTree {
+
+    private final AtomicLongArray tree;
+
+    public FenwickTree(int size) {
+        this.tree = new AtomicLongArray(size + 1);
+    }
+
+    public void add(int position, long delta) {
+        for (int i = position + 1; i < tree.length(); i += i & -i) {
+            tree.addAndGet(i, delta);
+        }
+    }
+
+    /**
+     * @return the sum of positions 0..position, inclusive; 0 below the range and the total above it
+     */
+    public long prefixSum(int position) {
+        long sum = 0;
+        for (int i = Math.min(position + 1, tree.length() - 1); i > 0; i -= i & -i) {
+            sum += tree.get(i);
+        }
+        return sum;
+    }
+
+    public int size() {
+        return tree.length() - 1;
+    }
+}
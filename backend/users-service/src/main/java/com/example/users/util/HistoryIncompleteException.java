@@ -0,0 +1,14 @@
+package com.example.users.util;
+
+/**
+ * Thrown when a profile version cannot be rebuilt because history entries between it and the
+ * current version are missing, usually because the background history writer has not
+ * flushed them yet.
+ */
+public class HistoryIncompleteException extends RuntimeException {
+
+    public HistoryIncompleteException(Long profileId, int updateCount, int expected, int found) {
+        super("History of profile " + profileId + " above version " + updateCount + " has " + found
+                + " of " + expected + " entries");
+    }
+}
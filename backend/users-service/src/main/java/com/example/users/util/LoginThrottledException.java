@@ -0,0 +1,21 @@
+package com.example.users.util;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a login or password check arrives after its account or client has used up
+ * its attempts; nothing has been looked up or hashed.
+ */
+public class LoginThrottledException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public LoginThrottledException(Duration retryAfter) {
+        super("Too many login attempts");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
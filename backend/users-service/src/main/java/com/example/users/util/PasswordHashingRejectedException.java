@@ -0,0 +1,11 @@
+package com.example.users.util;
+
+/**
+ * Thrown when the password hashing pool is saturated and cannot take more work.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public PasswordHashingRejectedException(Throwable cause) {
+        super("Password hashing capacity exhausted", cause);
+    }
+}
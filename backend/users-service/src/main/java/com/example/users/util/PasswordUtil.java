@@ -1,23 +1,72 @@
 package com.example.users.util;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
 @Component
 public class PasswordUtil {
     
     private final PasswordEncoder passwordEncoder;
+    private final ExecutorService hashingExecutor;
+    // Bulk hashing keeps at most this many tasks in flight so it leaves queue room for logins
+    private final int bulkWindow;
     
-    public PasswordUtil() {
+    public PasswordUtil(
+            @Qualifier("passwordHashingExecutor") ExecutorService hashingExecutor,
+            @Value("${users.password-hashing.queue-capacity:100}") int queueCapacity) {
         this.passwordEncoder = new BCryptPasswordEncoder();
+        this.hashingExecutor = hashingExecutor;
+        this.bulkWindow = Math.max(1, queueCapacity / 2);
     }
     
     public String hashPassword(String plainPassword) {
-        return passwordEncoder.encode(plainPassword);
+        return hashPasswordAsync(plainPassword).join();
     }
     
     public boolean matches(String plainPassword, String hashedPassword) {
-        return passwordEncoder.matches(plainPassword, hashedPassword);
+        return matchesAsync(plainPassword, hashedPassword).join();
+    }
+
+    /**
+     * Hashes all passwords in parallel on the hashing pool, a window at a time.
+     */
+    public List<String> hashPasswords(List<String> plainPasswords) {
+        List<String> hashes = new ArrayList<>(plainPasswords.size());
+        for (int start = 0; start < plainPasswords.size(); start += bulkWindow) {
+            List<CompletableFuture<String>> window = plainPasswords
+                    .subList(start, Math.min(start + bulkWindow, plainPasswords.size()))
+                    .stream()
+                    .map(this::hashPasswordAsync)
+                    .toList();
+            window.forEach(hash -> hashes.add(hash.join()));
+        }
+        return hashes;
+    }
+
+    public CompletableFuture<String> hashPasswordAsync(String plainPassword) {
+        return submit(() -> passwordEncoder.encode(plainPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(String plainPassword, String hashedPassword) {
+        return submit(() -> passwordEncoder.matches(plainPassword, hashedPassword));
+    }
+
+    // Rejection surfaces synchronously so callers fail before doing any further work
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, hashingExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new PasswordHashingRejectedException(e);
+        }
     }
 }
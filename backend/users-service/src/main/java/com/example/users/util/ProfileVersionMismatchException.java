@@ -0,0 +1,25 @@
+package com.example.users.util;
+
+/**
+ * Thrown when an update names the profile version it was based on (If-Match) and the stored
+ * profile has moved past it.
+ */
+public class ProfileVersionMismatchException extends RuntimeException {
+
+    private final Long profileId;
+    private final int currentUpdateCount;
+
+    public ProfileVersionMismatchException(Long profileId, int expectedUpdateCount, int currentUpdateCount) {
+        super("Profile " + profileId + " is at version " + currentUpdateCount + ", not " + expectedUpdateCount);
+        this.profileId = profileId;
+        this.currentUpdateCount = currentUpdateCount;
+    }
+
+    public Long getProfileId() {
+        return profileId;
+    }
+
+    public int getCurrentUpdateCount() {
+        return currentUpdateCount;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.users.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per key: up to {@code burst} attempts at once, refilled at one per
+ * {@code refillPeriod}. Each bucket is a single AtomicLong holding the time at which it will
+ * be full again (the generic cell rate algorithm), so an attempt is one compare-and-set and
+ * needs no lock. Buckets live in a size-bounded Caffeine cache and are dropped once idle for
+ * as long as a refill from empty takes, at which point a fresh bucket is the same as the old.
+ */
+public class RateLimiter {
+
+    private final long periodNanos;
+    private final long burstNanos;
+    private final Cache<String, AtomicLong> buckets;
+
+    public RateLimiter(int burst, Duration refillPeriod, long maximumKeys) {
+        if (burst < 1 || refillPeriod.isNegative() || refillPeriod.isZero()) {
+            throw new IllegalArgumentException("burst must be positive and refillPeriod longer than zero");
+        }
+        this.periodNanos = refillPeriod.toNanos();
+        this.burstNanos = periodNanos * burst;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterAccess(Duration.ofNanos(burstNanos))
+                .build();
+    }
+
+    /**
+     * Takes one attempt from the key's bucket.
+     *
+     * @return 0 when allowed, otherwise the nanoseconds until the next attempt would be
+     */
+    public long tryAcquire(String key) {
+        AtomicLong fullAt = buckets.get(key, k -> new AtomicLong(Long.MIN_VALUE));
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            // An empty bucket would be full burstNanos from now; each attempt pushes that out by a period
+            long next = (current == Long.MIN_VALUE || current - now < 0 ? now : current) + periodNanos;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public long estimatedKeys() {
+        return buckets.estimatedSize();
+    }
+}
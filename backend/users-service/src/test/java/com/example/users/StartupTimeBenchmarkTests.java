@@ -0,0 +1,166 @@
+package com.example.users;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Starts the packaged service as a separate JVM on H2 and times it from process start to the
+ * first 200 from /actuator/health/readiness, the point at which Kubernetes would route
+ * traffic to it. Compares the executable jar, the jar extracted with Spring Boot's jarmode
+ * tools, the extracted jar with a class-data-sharing archive from a training run, and, when
+ * the jar was built with -Pfaststart, the AOT-processed context with that archive. Prints the
+ * median of several starts per mode.
+ * <p>
+ * Needs the jar, so it is excluded from the normal build; run with
+ * {@code mvn package [-Pfaststart] -DskipTests && mvn test -Pbenchmark -Dtest=StartupTimeBenchmarkTests
+ * [-Dbenchmark.startup.runs=5]}. Note that {@code mvn test} on its own recompiles without the
+ * AOT sources but leaves the jar as packaged.
+ */
+@Tag("benchmark")
+class StartupTimeBenchmarkTests {
+
+    private static final int RUNS = Integer.getInteger("benchmark.startup.runs", 3);
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(3);
+    private static final String AOT_INITIALIZER =
+            "BOOT-INF/classes/com/example/users/UsersServiceApplication__ApplicationContextInitializer.class";
+
+    private record Mode(String name, List<String> jvmArguments) {
+    }
+
+    private record Result(String mode, double medianSeconds, double minSeconds, double maxSeconds) {
+    }
+
+    @Test
+    void compareStartupModes() throws Exception {
+        Path target = Paths.get("target");
+        Path jar;
+        try (Stream<Path> files = Files.list(target)) {
+            jar = files.filter(file -> file.getFileName().toString().endsWith("-exec.jar")).findFirst().orElse(null);
+        } catch (IOException e) {
+            jar = null;
+        }
+        assumeTrue(jar != null, "No executable jar in target/, run mvn package first");
+        boolean aot;
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            aot = jarFile.getEntry(AOT_INITIALIZER) != null;
+        }
+
+        Path workDir = target.resolve("startup-benchmark");
+        Path extracted = workDir.resolve("application");
+        Path archive = extracted.resolve("application.jsa").toAbsolutePath();
+        Path extractedJar = extracted.resolve(jar.getFileName()).toAbsolutePath();
+        Files.createDirectories(workDir);
+        exec(workDir, List.of("-Djarmode=tools", "-jar", jar.toAbsolutePath().toString(),
+                "extract", "--destination", extracted.toAbsolutePath().toString(), "--force"));
+        // Training run: refresh the context, exit, and dump the loaded classes into the archive
+        List<String> training = new ArrayList<>(List.of("-XX:ArchiveClassesAtExit=" + archive,
+                "-Dspring.context.exit=onRefresh"));
+        if (aot) {
+            training.add("-Dspring.aot.enabled=true");
+        }
+        training.addAll(List.of("-jar", extractedJar.toString(), "--spring.profiles.active=h2"));
+        exec(workDir, training);
+        assertThat(archive).exists();
+
+        List<Mode> modes = new ArrayList<>(List.of(
+                new Mode("jar", List.of("-jar", jar.toAbsolutePath().toString())),
+                new Mode("extracted", List.of("-jar", extractedJar.toString()))));
+        if (aot) {
+            // The archive was trained with AOT classes loaded, so it only pairs with the AOT start
+            modes.add(new Mode("aot+cds", List.of("-XX:SharedArchiveFile=" + archive,
+                    "-Dspring.aot.enabled=true", "-jar", extractedJar.toString())));
+        } else {
+            modes.add(new Mode("cds", List.of("-XX:SharedArchiveFile=" + archive, "-jar", extractedJar.toString())));
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (Mode mode : modes) {
+            double[] seconds = new double[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                seconds[run] = timeToReady(workDir, mode) / 1e9;
+            }
+            Arrays.sort(seconds);
+            results.add(new Result(mode.name(), seconds[RUNS / 2], seconds[0], seconds[RUNS - 1]));
+        }
+
+        System.out.printf("%nStartup benchmark: %s, %d runs per mode, H2, %d CPUs%n",
+                jar.getFileName(), RUNS, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %10s %10s %10s%n", "mode", "median s", "min s", "max s");
+        for (Result result : results) {
+            System.out.printf("%-10s %10.2f %10.2f %10.2f%n",
+                    result.mode(), result.medianSeconds(), result.minSeconds(), result.maxSeconds());
+        }
+    }
+
+    private long timeToReady(Path workDir, Mode mode) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> arguments = new ArrayList<>(mode.jvmArguments());
+        arguments.addAll(List.of("--spring.profiles.active=h2", "--server.port=" + port,
+                "--spring.main.banner-mode=off", "--logging.level.root=WARN"));
+        URI readiness = URI.create("http://localhost:" + port + "/actuator/health/readiness");
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+        long start = System.nanoTime();
+        Process process = start(workDir, mode.name(), arguments);
+        try {
+            while (System.nanoTime() - start < READY_TIMEOUT.toNanos()) {
+                assertThat(process.isAlive()).as("%s exited before it was ready, see %s", mode.name(), workDir).isTrue();
+                try {
+                    HttpResponse<Void> response = http.send(HttpRequest.newBuilder(readiness).build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 200) {
+                        return System.nanoTime() - start;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(50);
+            }
+            throw new AssertionError(mode.name() + " was not ready within " + READY_TIMEOUT);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static void exec(Path workDir, List<String> arguments) throws Exception {
+        Process process = start(workDir, "setup", arguments);
+        assertThat(process.waitFor()).as("%s, see %s", arguments, workDir).isZero();
+    }
+
+    private static Process start(Path workDir, String logName, List<String> arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(arguments);
+        return new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve(logName + ".log").toFile())
+                .start();
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.users;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileRepository;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the service twice on H2, once on platform request threads and once with
+ * spring.threads.virtual.enabled, and drives both with the same closed-loop load: many
+ * concurrent clients issuing id lookups with every tenth request a PATCH. The profile cache
+ * is disabled so every request goes through JPA/JDBC. Prints throughput and latency per mode,
+ * and fails if a virtual thread pinned its carrier inside this application's code.
+ * <p>
+ * Excluded from the normal build; run with
+ * {@code mvn test -Pbenchmark [-Dbenchmark.concurrency=1000 -Dbenchmark.duration=PT20S]}.
+ */
+@Tag("benchmark")
+class ThreadModeBenchmarkTests {
+
+    private static final int PROFILE_COUNT = 5_000;
+    private static final int WRITE_EVERY = 10;
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 1000);
+    private static final Duration WARMUP = Duration.parse(System.getProperty("benchmark.warmup", "PT5S"));
+    private static final Duration MEASUREMENT = Duration.parse(System.getProperty("benchmark.duration", "PT15S"));
+
+    private record Result(String mode, long requests, long conflicts, long errors, double throughput,
+                          double p50Millis, double p99Millis, double maxMillis, long pinnedEvents,
+                          List<String> pinnedInApplication) {
+    }
+
+    @Test
+    void compareThreadModes() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("%nThread mode benchmark: %d clients, %s warm-up, %s measured, H2, cache disabled%n",
+                CONCURRENCY, WARMUP, MEASUREMENT);
+        System.out.printf("%-9s %10s %10s %9s %9s %9s %10s %7s %7s%n",
+                "mode", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "conflicts", "errors", "pinned");
+        for (Result result : List.of(platform, virtual)) {
+            System.out.printf("%-9s %10d %10.0f %9.2f %9.2f %9.2f %10d %7d %7d%n",
+                    result.mode(), result.requests(), result.throughput(), result.p50Millis(),
+                    result.p99Millis(), result.maxMillis(), result.conflicts(), result.errors(),
+                    result.pinnedEvents());
+        }
+        virtual.pinnedInApplication().forEach(stack -> System.out.println("Pinned in application code:\n" + stack));
+
+        assertThat(platform.errors()).isZero();
+        assertThat(virtual.errors()).isZero();
+        assertThat(virtual.pinnedInApplication()).isEmpty();
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(UsersServiceApplication.class)
+                .profiles("h2")
+                // Command-line arguments, so they take precedence over application.yml
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--spring.devtools.restart.enabled=false",
+                        "--spring.devtools.livereload.enabled=false",
+                        "--users.profile-cache.maximum-size=0",
+                        "--logging.level.root=WARN");
+             RecordingStream pinning = new RecordingStream();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder().executor(clients).build()) {
+            assertThat(context.getEnvironment().getProperty("spring.threads.virtual.enabled", Boolean.class))
+                    .isEqualTo(virtualThreads);
+            List<Long> ids = seed(context.getBean(ProfileRepository.class));
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/api/profiles/";
+
+            AtomicLong pinnedEvents = new AtomicLong();
+            List<String> pinnedInApplication = new ArrayList<>();
+            pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(1)).withStackTrace();
+            pinning.onEvent("jdk.VirtualThreadPinned", event -> {
+                pinnedEvents.incrementAndGet();
+                List<RecordedFrame> frames = event.getStackTrace() == null ? List.of() : event.getStackTrace().getFrames();
+                if (frames.stream().anyMatch(frame -> frame.getMethod().getType().getName().startsWith("com.example.users"))) {
+                    synchronized (pinnedInApplication) {
+                        pinnedInApplication.add(event.getStackTrace().toString());
+                    }
+                }
+            });
+            pinning.startAsync();
+
+            long measureFrom = System.nanoTime() + WARMUP.toNanos();
+            long measureUntil = measureFrom + MEASUREMENT.toNanos();
+            ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+            AtomicLong conflicts = new AtomicLong();
+            AtomicLong errors = new AtomicLong();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int client = 0; client < CONCURRENCY; client++) {
+                workers.add(clients.submit(() -> {
+                    long[] recorded = new long[1024];
+                    int count = 0;
+                    long request = ThreadLocalRandom.current().nextInt(WRITE_EVERY);
+                    while (true) {
+                        Long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(base + id));
+                        if (++request % WRITE_EVERY == 0) {
+                            builder.header("Content-Type", "application/json")
+                                    .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                            "{\"name\":\"Benchmark " + request + "\"}"));
+                        }
+                        long start = System.nanoTime();
+                        if (start >= measureUntil) {
+                            break;
+                        }
+                        int status;
+                        try {
+                            status = http.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (Exception e) {
+                            status = -1;
+                        }
+                        long end = System.nanoTime();
+                        if (start < measureFrom || end > measureUntil) {
+                            continue;
+                        }
+                        if (status == 409) {
+                            conflicts.incrementAndGet();
+                        } else if (status < 200 || status >= 300) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == recorded.length) {
+                            recorded = Arrays.copyOf(recorded, count * 2);
+                        }
+                        recorded[count++] = end - start;
+                    }
+                    latencies.add(Arrays.copyOf(recorded, count));
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            // Flushes the events still buffered in the recording
+            pinning.stop();
+
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(mode, all.length, conflicts.get(), errors.get(),
+                    all.length / (MEASUREMENT.toNanos() / 1e9), percentile(all, 0.50), percentile(all, 0.99),
+                    all.length == 0 ? 0 : all[all.length - 1] / 1e6, pinnedEvents.get(), pinnedInApplication);
+        }
+    }
+
+    private static List<Long> seed(ProfileRepository profileRepository) {
+        List<Profile> profiles = new ArrayList<>(PROFILE_COUNT);
+        for (int i = 0; i < PROFILE_COUNT; i++) {
+            Profile profile = new Profile();
+            profile.setName("Benchmark " + i);
+            profile.setEmail("benchmark" + i + "@example.com");
+            profile.setDob(LocalDate.of(1990, 1, 1));
+            profile.setSex(i % 2 == 0 ? "Female" : "Male");
+            profile.setPassword("hash");
+            profile.getPhones().add("+1555" + i);
+            profile.getAddresses().add(i + " Benchmark Street");
+            profiles.add(profile);
+        }
+        return profileRepository.saveAll(profiles).stream().map(Profile::getId).toList();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
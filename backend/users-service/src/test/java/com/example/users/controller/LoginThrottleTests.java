@@ -0,0 +1,95 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.EmailBloomFilter;
+import com.example.users.service.ProfileCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Attempts beyond an account's or a client's bucket are answered with 429 straight away,
+ * without the asynchronous BCrypt check a counted attempt goes through.
+ */
+@SpringBootTest(properties = {
+        "users.login-throttle.account.burst=2",
+        "users.login-throttle.client.burst=4",
+        "users.login-throttle.account.refill-period=PT1H",
+        "users.login-throttle.client.refill-period=PT1H"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class LoginThrottleTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private EmailBloomFilter emailBloomFilter;
+
+    @Test
+    void attemptsBeyondTheAccountAndClientLimitsAreRejectedBeforeHashing() throws Exception {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        Profile profile = new Profile();
+        profile.setEmail("guessed@example.com");
+        profile.setPassword("$2a$04$abcdefghijklmnopqrstuu7ZKL5e9DQ5sMyVw7hVpU9lb2Gv5P3vS");
+        profileRepository.save(profile);
+        emailBloomFilter.rebuild();
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult attempt = mockMvc.perform(login("guessed@example.com", "wrong", "10.0.0.1"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(attempt)).andExpect(status().isUnauthorized());
+        }
+        // Same account from another address: the account is out of attempts
+        mockMvc.perform(login("GUESSED@example.com", "wrong", "10.0.0.2"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+        // One address spraying other accounts runs out at the client limit
+        for (int i = 0; i < 4; i++) {
+            MvcResult attempt = mockMvc.perform(login("nobody" + i + "@example.com", "wrong", "10.0.0.3"))
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(attempt)).andExpect(status().isNotFound());
+        }
+        mockMvc.perform(login("nobody4@example.com", "wrong", "10.0.0.3"))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    private static MockHttpServletRequestBuilder login(String email, String password, String clientAddress) {
+        return post("/api/profiles/login").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}")
+                .with(request -> {
+                    request.setRemoteAddr(clientAddress);
+                    return request;
+                });
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The Prometheus scrape carries request latency per endpoint, service operation timers,
+ * Hibernate statistics, connection pool and password-hashing pool meters. The asynchronous
+ * password check is timed until its future completes.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
+@ActiveProfiles("h2")
+class MetricsEndpointTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileService profileService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void prometheusScrapeCoversRequestsServiceDatabaseAndPools() throws Exception {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        Profile profile = new Profile();
+        profile.setName("Metrics");
+        profile.setEmail("metrics@example.com");
+        profile.setDob(LocalDate.of(1990, 1, 1));
+        profile.setSex("Female");
+        profile.setPassword("hash");
+        Long id = profileRepository.save(profile).getId();
+
+        mockMvc.perform(get("/api/profiles/{id}", id)).andExpect(status().isOk());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(scrape)
+                .contains("http_server_requests_seconds_bucket{application=\"users-service\"")
+                .contains("uri=\"/api/profiles/{id}\"")
+                .contains("users_profile_operations_seconds_count{application=\"users-service\",class=\"com.example.users.service.ProfileService\",exception=\"none\",method=\"getProfileById\",operation=\"get_by_id\"}")
+                .contains("hibernate_query_executions_total")
+                .contains("hikaricp_connections_acquire_seconds_bucket")
+                .contains("executor_queued_tasks{application=\"users-service\",name=\"password-hashing\"}");
+    }
+
+    @Test
+    void asyncPasswordCheckIsTimedUntilItCompletes() {
+        String hash = new BCryptPasswordEncoder(12).encode("secret");
+        long start = System.nanoTime();
+        new BCryptPasswordEncoder().matches("secret", hash);
+        long hashNanos = System.nanoTime() - start;
+
+        Timer timer = Timer.builder("users.profile.operations")
+                .tags("class", ProfileService.class.getName(), "method", "verifyPasswordAsync",
+                        "operation", "verify_password", "exception", "none")
+                .register(meterRegistry);
+        double before = timer.totalTime(TimeUnit.NANOSECONDS);
+
+        assertThat(profileService.verifyPasswordAsync("secret", hash).join()).isTrue();
+
+        // Stopped at the submit it would gain microseconds; a cost-12 check takes far longer than half its time
+        assertThat(timer.totalTime(TimeUnit.NANOSECONDS) - before).isGreaterThan(hashNanos / 2.0);
+    }
+}
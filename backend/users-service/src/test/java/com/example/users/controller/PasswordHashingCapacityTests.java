@@ -0,0 +1,121 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.EmailBloomFilter;
+import com.example.users.service.ProfileCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * With the one hashing thread busy and its one queue slot taken, a login or registration is
+ * turned away with 503 and Retry-After instead of waiting, and is served again once the
+ * pool has room.
+ */
+@SpringBootTest(properties = {
+        "users.password-hashing.threads=1",
+        "users.password-hashing.queue-capacity=1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class PasswordHashingCapacityTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    @Qualifier("passwordHashingExecutor")
+    private ExecutorService passwordHashingExecutor;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private EmailBloomFilter emailBloomFilter;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void seed() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        Profile profile = new Profile();
+        profile.setName("Busy");
+        profile.setEmail("busy@example.com");
+        profile.setDob(LocalDate.of(1990, 1, 1));
+        profile.setSex("Female");
+        profile.setPassword(new BCryptPasswordEncoder(4).encode("secret"));
+        profileRepository.save(profile);
+        emailBloomFilter.rebuild();
+    }
+
+    @AfterEach
+    void releasePool() {
+        release.countDown();
+    }
+
+    @Test
+    void saturatedPoolAnswersWith503() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        Future<?> worker = passwordHashingExecutor.submit(() -> {
+            running.countDown();
+            release.await();
+            return null;
+        });
+        assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+        Future<?> queued = passwordHashingExecutor.submit(() -> null);
+
+        mockMvc.perform(post("/api/profiles/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"busy@example.com\",\"password\":\"secret\"}"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"New\",\"email\":\"new@example.com\",\"dob\":\"1990-01-01\","
+                                + "\"sex\":\"Female\",\"password\":\"secret\"}"))
+                .andExpect(status().isServiceUnavailable());
+        assertThat(profileRepository.findByEmail("new@example.com")).isEmpty();
+
+        release.countDown();
+        worker.get(10, TimeUnit.SECONDS);
+        queued.get(10, TimeUnit.SECONDS);
+
+        MvcResult login = mockMvc.perform(post("/api/profiles/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"busy@example.com\",\"password\":\"secret\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(login)).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.IdSequenceAligner;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Bulk create and update answer every item in request order; an item that cannot be
+ * written is reported without failing the others.
+ */
+@SpringBootTest(properties = "users.batch.max-size=60")
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileBatchTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private IdSequenceAligner idSequenceAligner;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clean() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+    }
+
+    @Test
+    void createReportsEachItemAndStoresTheAcceptedOnes() throws Exception {
+        Profile existing = profile("taken@example.com");
+
+        mockMvc.perform(post("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + String.join(",",
+                                item("new1@example.com", "secret"),
+                                item("nopassword@example.com", null),
+                                item("NEW1@example.com", "secret"),
+                                item(existing.getEmail(), "secret"),
+                                item("new2@example.com", "secret")) + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].index", contains(0, 1, 2, 3, 4)))
+                .andExpect(jsonPath("$[*].status", contains("CREATED", "INVALID", "CONFLICT", "CONFLICT", "CREATED")))
+                .andExpect(jsonPath("$[0].id").isNumber())
+                .andExpect(jsonPath("$[1].message").value("password must not be blank"))
+                .andExpect(jsonPath("$[2].message").value("Duplicate email in batch: NEW1@example.com"))
+                .andExpect(jsonPath("$[3].message").value("Email already exists: taken@example.com"))
+                .andExpect(jsonPath("$[4].id").isNumber());
+
+        assertThat(profileRepository.findByEmail("new1@example.com")).isPresent();
+        assertThat(profileRepository.findByEmail("new2@example.com")).isPresent();
+        assertThat(profileRepository.findByEmail("nopassword@example.com")).isEmpty();
+        assertThat(profileRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void updateReportsEachItemAndAppliesTheAcceptedOnes() throws Exception {
+        Profile first = profile("first@example.com");
+        Profile second = profile("second@example.com");
+        Profile third = profile("third@example.com");
+
+        mockMvc.perform(put("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + String.join(",",
+                                update(first.getId(), "first@example.com", "Renamed"),
+                                update(null, "nobody@example.com", "No id"),
+                                update(first.getId() + 1000, "unknown@example.com", "Unknown"),
+                                update(first.getId(), "first@example.com", "Twice"),
+                                update(third.getId(), second.getEmail(), "Steals email")) + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].status", contains("UPDATED", "INVALID", "NOT_FOUND", "CONFLICT", "CONFLICT")))
+                .andExpect(jsonPath("$[1].message").value("id must not be null"))
+                .andExpect(jsonPath("$[3].message").value("Duplicate id in batch: " + first.getId()))
+                .andExpect(jsonPath("$[4].message").value("Email already exists: second@example.com"));
+
+        assertThat(profileRepository.findById(first.getId()).orElseThrow().getName()).isEqualTo("Renamed");
+        assertThat(profileRepository.findById(first.getId()).orElseThrow().getUpdateCount()).isEqualTo(1);
+        assertThat(profileRepository.findById(third.getId()).orElseThrow().getName()).isEqualTo("Batch");
+        assertThat(profileHistoryRepository.findByProfileId(first.getId())).hasSize(1);
+    }
+
+    @Test
+    void batchesAboveTheLimitAreRejectedWhole() throws Exception {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i <= 60; i++) {
+            items.add(item("over" + i + "@example.com", "secret"));
+        }
+
+        mockMvc.perform(post("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + String.join(",", items) + "]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + String.join(",", items) + "]"))
+                .andExpect(status().isBadRequest());
+        assertThat(profileRepository.count()).isZero();
+    }
+
+    @Test
+    void idsContinuePastRowsInsertedWithExplicitIds() throws Exception {
+        long lastId = profile("before-load@example.com").getId();
+        // A bulk load that wrote its own id inside the range the sequence would hand out next
+        long loadedId = lastId + Profile.ID_ALLOCATION_SIZE;
+        jdbcTemplate.update("insert into profiles (id, name, email, email_domain, dob, age, sex, password, update_count)"
+                + " values (?, 'Loaded', 'loaded@example.com', 'example.com', ?, 30, 'Female', 'hash', 0)",
+                loadedId, LocalDate.of(1994, 1, 1));
+
+        idSequenceAligner.alignAll();
+
+        // More than one allocation block, so new ids come from the realigned sequence
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            items.add(item("after-load" + i + "@example.com", "secret"));
+        }
+        String body = mockMvc.perform(post("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + String.join(",", items) + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].status", everyItem(is("CREATED"))))
+                .andExpect(jsonPath("$[*].id", everyItem(notNullValue())))
+                .andReturn().getResponse().getContentAsString();
+
+        List<Number> ids = JsonPath.read(body, "$[*].id");
+        assertThat(ids).extracting(Number::longValue).doesNotContain(loadedId).doesNotHaveDuplicates();
+        assertThat(ids.stream().mapToLong(Number::longValue).max().orElseThrow()).isGreaterThan(loadedId);
+        assertThat(profileRepository.count()).isEqualTo(62);
+    }
+
+    private Profile profile(String email) {
+        Profile profile = new Profile();
+        profile.setName("Batch");
+        profile.setEmail(email);
+        profile.setDob(LocalDate.of(1990, 1, 1));
+        profile.setSex("Female");
+        profile.setPassword("hash");
+        return profileRepository.save(profile);
+    }
+
+    private static String item(String email, String password) {
+        return "{\"name\":\"Batch\",\"email\":\"" + email + "\",\"dob\":\"1990-01-01\",\"sex\":\"Female\""
+                + (password == null ? "" : ",\"password\":\"" + password + "\"") + "}";
+    }
+
+    private static String update(Long id, String email, String name) {
+        return "{" + (id == null ? "" : "\"id\":" + id + ",") + "\"name\":\"" + name + "\",\"email\":\"" + email
+                + "\",\"dob\":\"1990-01-01\",\"sex\":\"Female\",\"password\":\"secret\"}";
+    }
+}
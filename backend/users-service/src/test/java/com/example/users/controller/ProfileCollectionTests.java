@@ -0,0 +1,116 @@
+package com.example.users.controller;
+
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Phones and addresses are sets: every response lists them sorted, the one answering the
+ * write included, and a request that repeats an element is rejected.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileCollectionTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @BeforeEach
+    void clean() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+    }
+
+    @Test
+    void writesAndReadsListTheElementsInTheSameOrder() throws Exception {
+        String created = mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content(profile("order@example.com", "[\"+2\",\"+1\"]", "[\"B Street\",\"A Street\"]")))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.phones", contains("+1", "+2")))
+                .andExpect(jsonPath("$.addresses", contains("A Street", "B Street")))
+                .andReturn().getResponse().getContentAsString();
+        Number id = JsonPath.read(created, "$.id");
+
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(jsonPath("$.phones", contains("+1", "+2")));
+        profileCache.invalidateAll();
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(jsonPath("$.phones", contains("+1", "+2")));
+
+        mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"addPhones\":[\"+0\"],\"removePhones\":[\"+2\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.phones", contains("+0", "+1")));
+        profileCache.invalidateAll();
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(jsonPath("$.phones", contains("+0", "+1")));
+    }
+
+    @Test
+    void repeatedElementsAreRejected() throws Exception {
+        mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content(profile("twice@example.com", "[\"+1\",\"+1\"]", "[]")))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Duplicate phone or address: +1"));
+
+        String created = mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content(profile("once@example.com", "[\"+1\"]", "[\"A Street\"]")))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Number id = JsonPath.read(created, "$.id");
+
+        mockMvc.perform(put("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content(profile("once@example.com", "[\"+1\"]", "[\"A Street\",\"A Street\"]")))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"addPhones\":[\"+2\",\"+2\"]}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"phones\":[\"+2\",null]}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + profile("batch@example.com", "[\"+3\",\"+3\"]", "[]") + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("INVALID"));
+
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(jsonPath("$.phones", contains("+1")))
+                .andExpect(jsonPath("$.addresses", contains("A Street")));
+        assertThat(profileRepository.findById(id.longValue()).orElseThrow().getUpdateCount()).isZero();
+    }
+
+    private static String profile(String email, String phones, String addresses) {
+        return "{\"name\":\"Collections\",\"email\":\"" + email + "\",\"dob\":\"1990-01-01\",\"sex\":\"Female\","
+                + "\"password\":\"secret\",\"phones\":" + phones + ",\"addresses\":" + addresses + "}";
+    }
+}
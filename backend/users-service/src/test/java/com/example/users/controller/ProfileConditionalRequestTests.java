@@ -0,0 +1,126 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * ETag / If-None-Match on reads and If-Match on updates, keyed by the profile's updateCount.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileConditionalRequestTests {
+
+    private static final String UPDATE = "{\"name\":\"Renamed\",\"email\":\"etag@example.com\",\"dob\":\"1990-01-01\","
+            + "\"sex\":\"Female\",\"phones\":[\"+100\"],\"addresses\":[]}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    private Long id;
+
+    @BeforeEach
+    void seed() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        Profile profile = new Profile();
+        profile.setName("Original");
+        profile.setEmail("etag@example.com");
+        profile.setDob(LocalDate.of(1990, 1, 1));
+        profile.setSex("Female");
+        profile.setPassword("hash");
+        id = profileRepository.save(profile).getId();
+    }
+
+    @Test
+    void unchangedProfileIsAnsweredWithNotModified() throws Exception {
+        String etag = "\"" + id + "-0\"";
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+
+        mockMvc.perform(get("/api/profiles/{id}", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void updateWithCurrentVersionSucceedsAndStaleVersionIsRejected() throws Exception {
+        mockMvc.perform(put("/api/profiles/{id}", id)
+                        .header(HttpHeaders.IF_MATCH, "\"" + id + "-0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+
+        mockMvc.perform(patch("/api/profiles/{id}", id)
+                        .header(HttpHeaders.IF_MATCH, "\"" + id + "-0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Lost update\"}"))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+
+        mockMvc.perform(get("/api/profiles/{id}", id).header(HttpHeaders.IF_NONE_MATCH, "\"" + id + "-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+    }
+
+    @Test
+    void updateThatChangesNothingStillAdvancesTheVersion() throws Exception {
+        mockMvc.perform(put("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON).content(UPDATE))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+        mockMvc.perform(put("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON).content(UPDATE))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-2\""));
+    }
+
+    @Test
+    void conditionalUpdateOfAMissingProfileIsNotFound() throws Exception {
+        long missing = id + 1000;
+        // A tag for another profile, and one for the missing id itself
+        for (String ifMatch : List.of("\"" + id + "-0\"", "\"" + missing + "-0\"")) {
+            mockMvc.perform(put("/api/profiles/{id}", missing)
+                            .header(HttpHeaders.IF_MATCH, ifMatch)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(UPDATE))
+                    .andExpect(status().isNotFound());
+            mockMvc.perform(patch("/api/profiles/{id}", missing)
+                            .header(HttpHeaders.IF_MATCH, ifMatch)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"Nobody\"}"))
+                    .andExpect(status().isNotFound());
+        }
+    }
+}
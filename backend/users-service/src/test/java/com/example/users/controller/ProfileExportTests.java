@@ -0,0 +1,163 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The NDJSON export: one profile per line in id order across more than one chunk, the
+ * collections named in include=, and a gzipped body for clients that accept it.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileExportTests {
+
+    private static final int PROFILES = Profile.BATCH_SIZE + 1;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Long firstId;
+
+    @BeforeEach
+    void seed() throws Exception {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        List<Profile> profiles = new ArrayList<>();
+        for (int i = 0; i < PROFILES; i++) {
+            Profile profile = new Profile();
+            profile.setName("Export " + i);
+            profile.setEmail("export" + i + "@example.com");
+            profile.setDob(LocalDate.of(1990, 1, 1));
+            profile.setSex("Female");
+            profile.setPassword("hash");
+            profile.setPhones(new TreeSet<>(List.of("+100", "+200")));
+            profile.setAddresses(new TreeSet<>(List.of("1 Export Street")));
+            profiles.add(profile);
+        }
+        firstId = profileRepository.saveAll(profiles).get(0).getId();
+        mockMvc.perform(patch("/api/profiles/{id}", firstId).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Exported\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void writesOneProfilePerLineInIdOrder() throws Exception {
+        MvcResult result = export(get("/api/profiles/export"));
+
+        assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(body).endsWith("}\n");
+        List<JsonNode> lines = lines(body);
+        assertThat(lines).hasSize(PROFILES);
+        assertThat(lines).extracting(line -> line.get("id").asLong()).isSorted().doesNotHaveDuplicates();
+        assertThat(lines.get(0).get("name").asText()).isEqualTo("Exported");
+        assertThat(lines.get(0).get("updateCount").asInt()).isEqualTo(1);
+        // Collections appear only when asked for
+        assertThat(lines).allSatisfy(line -> assertThat(line.has("phones") || line.has("addresses")
+                || line.has("history")).isFalse());
+    }
+
+    @Test
+    void includeEmbedsOnlyTheNamedCollections() throws Exception {
+        List<JsonNode> phonesOnly = lines(export(get("/api/profiles/export").param("include", "phones"))
+                .getResponse().getContentAsString(StandardCharsets.UTF_8));
+        assertThat(phonesOnly).hasSize(PROFILES);
+        assertThat(phonesOnly.get(0).get("phones")).extracting(JsonNode::asText).containsExactly("+100", "+200");
+        assertThat(phonesOnly.get(0).has("addresses")).isFalse();
+        assertThat(phonesOnly.get(0).has("history")).isFalse();
+
+        List<JsonNode> everything = lines(export(get("/api/profiles/export")
+                        .param("include", "phones,addresses,history"))
+                .getResponse().getContentAsString(StandardCharsets.UTF_8));
+        JsonNode first = everything.get(0);
+        assertThat(first.get("id").asLong()).isEqualTo(firstId);
+        assertThat(first.get("addresses")).extracting(JsonNode::asText).containsExactly("1 Export Street");
+        assertThat(first.get("history")).hasSize(1);
+        assertThat(first.get("history").get(0).get("updateCount").asInt()).isEqualTo(1);
+        assertThat(everything.get(PROFILES - 1).get("history")).isEmpty();
+    }
+
+    @Test
+    void gzipsTheBodyWhenTheClientAcceptsIt() throws Exception {
+        String plain = export(get("/api/profiles/export").param("include", "phones"))
+                .getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        MvcResult gzipped = export(get("/api/profiles/export").param("include", "phones")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+
+        assertThat(gzipped.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzipped.getResponse().getHeaders(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(gunzip(gzipped.getResponse().getContentAsByteArray())).isEqualTo(plain);
+    }
+
+    private MvcResult export(MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult pending = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(header().exists(HttpHeaders.VARY))
+                .andReturn();
+    }
+
+    private List<JsonNode> lines(String body) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Keyset paging through a profile's history, newest first, and rebuilding the profile as it
+ * stood on a given day.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileHistoryEndpointTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long id;
+
+    @BeforeEach
+    void seed() throws Exception {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        Profile profile = new Profile();
+        profile.setName("Version 0");
+        profile.setEmail("history@example.com");
+        profile.setDob(LocalDate.of(1990, 1, 1));
+        profile.setSex("Female");
+        profile.setPassword("hash");
+        id = profileRepository.save(profile).getId();
+        for (int version = 1; version <= 3; version++) {
+            mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"Version " + version + "\"}"))
+                    .andExpect(status().isOk());
+        }
+    }
+
+    @Test
+    void historyIsPagedNewestFirstWithACursor() throws Exception {
+        String firstPage = mockMvc.perform(get("/api/profiles/{id}/history", id).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].updateCount").value(3))
+                .andExpect(jsonPath("$.items[1].updateCount").value(2))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(firstPage, "$.nextCursor");
+
+        mockMvc.perform(get("/api/profiles/{id}/history", id).param("limit", "2").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].updateCount").value(1))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+
+        mockMvc.perform(get("/api/profiles/{id}/history", id).param("cursor", "yesterday"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/profiles/{id}/history", id + 1000))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void asOfRebuildsTheVersionOfThatDayAndNothingBeforeCreation() throws Exception {
+        // Created on Jan 1st, updated on Jan 10th, Feb 10th and today
+        jdbcTemplate.update("update profiles set created_at = ? where id = ?",
+                Timestamp.valueOf("2024-01-01 12:00:00"), id);
+        jdbcTemplate.update("update profile_history set updated_at = ? where profile_id = ? and update_count = 1",
+                LocalDate.of(2024, 1, 10), id);
+        jdbcTemplate.update("update profile_history set updated_at = ? where profile_id = ? and update_count = 2",
+                LocalDate.of(2024, 2, 10), id);
+        profileCache.invalidateAll();
+
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "2023-12-31"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "2024-01-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Version 0"));
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "2024-01-15"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Version 1"));
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "2024-02-10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Version 2"));
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", LocalDate.now().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Version 3"));
+    }
+
+    @Test
+    void asOfADayBeforeAProfileCreatedTodayIsNotFound() throws Exception {
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", LocalDate.now().minusDays(1).toString()))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "1999-01-01"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void profilesWithoutACreationTimeStartAtTheirFirstUpdate() throws Exception {
+        jdbcTemplate.update("update profiles set created_at = null where id = ?", id);
+        jdbcTemplate.update("update profile_history set updated_at = ? where profile_id = ? and update_count = 1",
+                LocalDate.of(2024, 1, 10), id);
+        profileCache.invalidateAll();
+
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "2024-01-09"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/profiles/{id}/as-of", id).param("date", "2024-01-10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Version 1"));
+    }
+}
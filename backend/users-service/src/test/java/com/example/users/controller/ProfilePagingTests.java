@@ -0,0 +1,117 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET /api/profiles keyset paging: the page size is clamped to 1..500, nextCursor is null on
+ * the last page, and following it visits every profile once in id order.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfilePagingTests {
+
+    private static final int PROFILES = 7;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    private List<Long> ids;
+
+    @BeforeEach
+    void seed() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        List<Profile> profiles = new ArrayList<>();
+        for (int i = 0; i < PROFILES; i++) {
+            Profile profile = new Profile();
+            profile.setName("Page " + i);
+            profile.setEmail("page" + i + "@example.com");
+            profile.setDob(LocalDate.of(1990, 1, 1));
+            profile.setSex("Female");
+            profile.setPassword("hash");
+            profiles.add(profile);
+        }
+        ids = profileRepository.saveAll(profiles).stream().map(Profile::getId).sorted().toList();
+    }
+
+    @Test
+    void clampsThePageSize() throws Exception {
+        mockMvc.perform(get("/api/profiles").param("limit", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.limit").value(1))
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").value(ids.get(0)));
+        mockMvc.perform(get("/api/profiles").param("limit", "-5"))
+                .andExpect(jsonPath("$.limit").value(1));
+        mockMvc.perform(get("/api/profiles").param("limit", "100000"))
+                .andExpect(jsonPath("$.limit").value(500))
+                .andExpect(jsonPath("$.items.length()").value(PROFILES));
+        mockMvc.perform(get("/api/profiles"))
+                .andExpect(jsonPath("$.limit").value(50));
+    }
+
+    @Test
+    void lastPageHasNoNextCursor() throws Exception {
+        // Exactly the remaining profiles: the extra row fetched to look ahead is not there
+        mockMvc.perform(get("/api/profiles").param("limit", String.valueOf(PROFILES)))
+                .andExpect(jsonPath("$.items.length()").value(PROFILES))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+        mockMvc.perform(get("/api/profiles").param("limit", String.valueOf(PROFILES - 1)))
+                .andExpect(jsonPath("$.nextCursor").value(ids.get(PROFILES - 2)));
+        mockMvc.perform(get("/api/profiles").param("after", String.valueOf(ids.get(PROFILES - 1))))
+                .andExpect(jsonPath("$.items.length()").value(0))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+    }
+
+    @Test
+    void followingNextCursorVisitsEveryProfileOnce() throws Exception {
+        List<Long> visited = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        Long after = 0L;
+        while (after != null) {
+            String page = mockMvc.perform(get("/api/profiles").param("after", String.valueOf(after)).param("limit", "3"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            List<Number> pageIds = JsonPath.read(page, "$.items[*].id");
+            pageIds.forEach(id -> visited.add(id.longValue()));
+            pageSizes.add(pageIds.size());
+            Number next = JsonPath.read(page, "$.nextCursor");
+            after = next == null ? null : next.longValue();
+        }
+
+        assertThat(pageSizes).containsExactly(3, 3, 1);
+        assertThat(visited).containsExactlyElementsOf(ids);
+    }
+}
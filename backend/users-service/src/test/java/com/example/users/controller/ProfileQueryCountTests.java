@@ -0,0 +1,192 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.EmailBloomFilter;
+import com.example.users.service.ProfileCache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Pins the number of JDBC statements each read endpoint issues, so per-profile
+ * lazy loading of phones/addresses (1 + 2N queries) cannot creep back in, and checks
+ * that updates write only the phone/address rows that changed. Runs as the only writer, so
+ * the email filter's "absent" answers are final.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "users.email-filter.single-writer=true"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileQueryCountTests {
+
+    private static final int PROFILE_COUNT = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private EmailBloomFilter emailBloomFilter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Profile first;
+
+    @BeforeEach
+    void seed() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        for (int i = 0; i < PROFILE_COUNT; i++) {
+            Profile profile = new Profile();
+            profile.setName("User " + i);
+            profile.setEmail("user" + i + "@example.com");
+            profile.setDob(LocalDate.of(1990, 1, 1));
+            profile.setSex("Female");
+            profile.setPassword("hash");
+            profile.setPhones(new TreeSet<>(List.of("+1000" + i, "+2000" + i)));
+            profile.setAddresses(new TreeSet<>(List.of(i + " First Street", i + " Second Street")));
+            Profile saved = profileRepository.save(profile);
+            if (i == 0) {
+                first = saved;
+            }
+        }
+        profileCache.invalidateAll();
+        emailBloomFilter.rebuild();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void listPageLoadsCollectionsInOneBatchEach() throws Exception {
+        mockMvc.perform(get("/api/profiles").param("limit", String.valueOf(PROFILE_COUNT)))
+                .andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void streamLoadsCollectionsInOneBatchEachPerChunk() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/profiles/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void lookupByIdLoadsProfileAndBothCollections() throws Exception {
+        mockMvc.perform(get("/api/profiles/{id}", first.getId())).andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void lookupByEmailLoadsProfileAndBothCollections() throws Exception {
+        mockMvc.perform(get("/api/profiles/email/{email}", first.getEmail())).andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void lookupOfUnregisteredEmailSkipsTheDatabase() throws Exception {
+        mockMvc.perform(get("/api/profiles/email/{email}", "nobody@example.com")).andExpect(status().isNotFound());
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void repeatedLookupsAreServedFromTheCache() throws Exception {
+        mockMvc.perform(get("/api/profiles/{id}", first.getId())).andExpect(status().isOk());
+        statistics.clear();
+
+        mockMvc.perform(get("/api/profiles/{id}", first.getId())).andExpect(status().isOk());
+        mockMvc.perform(get("/api/profiles/email/{email}", first.getEmail())).andExpect(status().isOk());
+        mockMvc.perform(get("/api/profiles/{id}/update-count", first.getId())).andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void patchWritesOnlyTheChangedCollectionRows() throws Exception {
+        mockMvc.perform(patch("/api/profiles/{id}", first.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"removePhones\":[\"+10000\"],\"addPhones\":[\"+30000\"]}"))
+                .andExpect(status().isOk());
+
+        // One diffed update of the phones set; addresses untouched and nothing recreated
+        assertThat(statistics.getCollectionUpdateCount()).isEqualTo(1);
+        assertThat(statistics.getCollectionRecreateCount()).isZero();
+        assertThat(statistics.getCollectionRemoveCount()).isZero();
+        assertThat(profileRepository.findById(first.getId()).orElseThrow().getUpdateCount()).isEqualTo(1);
+    }
+
+    @Test
+    void putWithUnchangedCollectionsWritesNoCollectionRows() throws Exception {
+        mockMvc.perform(put("/api/profiles/{id}", first.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Renamed\",\"email\":\"user0@example.com\",\"dob\":\"1990-01-01\","
+                                + "\"sex\":\"Female\",\"phones\":[\"+20000\",\"+10000\"],"
+                                + "\"addresses\":[\"0 First Street\",\"0 Second Street\"]}"))
+                .andExpect(status().isOk());
+
+        assertThat(statistics.getCollectionUpdateCount()).isZero();
+        assertThat(statistics.getCollectionRecreateCount()).isZero();
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+    }
+
+    @Test
+    void deleteIssuesTheSameStatementsHoweverLongTheHistory() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mockMvc.perform(patch("/api/profiles/{id}", first.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"Version " + i + "\"}"))
+                    .andExpect(status().isOk());
+        }
+        assertThat(profileHistoryRepository.findByProfileId(first.getId())).hasSize(10);
+        statistics.clear();
+
+        mockMvc.perform(delete("/api/profiles/{id}", first.getId())).andExpect(status().isOk());
+
+        // The lookup, then one delete each for history, phones, addresses and the row
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(5);
+        assertThat(profileHistoryRepository.findByProfileId(first.getId())).isEmpty();
+        assertThat(profileRepository.existsById(first.getId())).isFalse();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.EmailDomainBackfill;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Filters of GET /api/profiles/search, alone and combined, and paging through the matches.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileSearchTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private EmailDomainBackfill emailDomainBackfill;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seed() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        save("Anna Smith", "anna@Example.com", 25, "Female");
+        save("Andrew Jones", "andrew@other.org", 35, "Male");
+        save("Anne Lee", "anne@example.com", 45, "Female");
+        save("Bob Brown", "bob@example.com", 30, "Male");
+        save("An_other", "underscore@example.com", 30, "Male");
+    }
+
+    private void save(String name, String email, int age, String sex) {
+        Profile profile = new Profile();
+        profile.setName(name);
+        profile.setEmail(email);
+        // One day past the birthday, so the age holds for the whole test run
+        profile.setDob(LocalDate.now().minusYears(age).minusDays(1));
+        profile.setAge(age);
+        profile.setSex(sex);
+        profile.setPassword("hash");
+        profileRepository.save(profile);
+    }
+
+    @Test
+    void combinesFilters() throws Exception {
+        mockMvc.perform(get("/api/profiles/search").param("name", "An"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].name", contains("Anna Smith", "Andrew Jones", "Anne Lee", "An_other")));
+
+        // LIKE wildcards in the prefix match literally
+        mockMvc.perform(get("/api/profiles/search").param("name", "An_"))
+                .andExpect(jsonPath("$.items[*].name", contains("An_other")));
+
+        mockMvc.perform(get("/api/profiles/search").param("minAge", "30").param("maxAge", "40"))
+                .andExpect(jsonPath("$.items[*].name", contains("Andrew Jones", "Bob Brown", "An_other")));
+
+        mockMvc.perform(get("/api/profiles/search")
+                        .param("name", "An").param("sex", "Female").param("emailDomain", "@EXAMPLE.com").param("maxAge", "30"))
+                .andExpect(jsonPath("$.items[*].name", contains("Anna Smith")));
+    }
+
+    @Test
+    void pagesThroughMatchesInIdOrder() throws Exception {
+        mockMvc.perform(get("/api/profiles/search").param("emailDomain", "example.com").param("limit", "2"))
+                .andExpect(jsonPath("$.items[*].name", contains("Anna Smith", "Anne Lee")))
+                .andExpect(jsonPath("$.nextCursor").isNumber());
+
+        Long cursor = profileRepository.findByEmail("anne@example.com").orElseThrow().getId();
+        mockMvc.perform(get("/api/profiles/search").param("emailDomain", "example.com").param("limit", "2")
+                        .param("after", cursor.toString()))
+                .andExpect(jsonPath("$.items[*].name", contains("Bob Brown", "An_other")))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+    }
+
+    @Test
+    void rejectsInvertedAgeRange() throws Exception {
+        mockMvc.perform(get("/api/profiles/search").param("minAge", "50").param("maxAge", "40"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void backfillsEmailDomainOfOlderRows() {
+        jdbcTemplate.update("update profiles set email_domain = null");
+        emailDomainBackfill.backfill();
+        assertThat(jdbcTemplate.queryForList("select distinct email_domain from profiles order by 1", String.class))
+                .containsExactly("example.com", "other.org");
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.users.controller;
+
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.example.users.service.ProfilePurger;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * In soft mode a delete hides the profile and frees its email straight away; the rows stay
+ * until the purge job runs.
+ */
+@SpringBootTest(properties = {"users.delete.mode=soft", "users.delete.purge-batch-size=2"})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileSoftDeleteTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private ProfilePurger profilePurger;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        profilePurger.purge();
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+    }
+
+    @Test
+    void softDeletedProfileIsHiddenAndPurgedLater() throws Exception {
+        long[] ids = new long[3];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = register("gone" + i + "@example.com");
+            mockMvc.perform(patch("/api/profiles/{id}", ids[i]).contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"Renamed\"}"))
+                    .andExpect(status().isOk());
+            mockMvc.perform(delete("/api/profiles/{id}", ids[i])).andExpect(status().isOk());
+        }
+
+        mockMvc.perform(get("/api/profiles/{id}", ids[0])).andExpect(status().isNotFound());
+        mockMvc.perform(delete("/api/profiles/{id}", ids[0])).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/profiles").param("limit", "10")).andExpect(jsonPath("$.items.length()").value(0));
+        // The email is free again although the old row is still there
+        register("gone0@example.com");
+        assertThat(rows("profiles")).isEqualTo(4);
+        assertThat(rows("profile_history")).isEqualTo(3);
+
+        // Two batches of at most two
+        assertThat(profilePurger.purge()).isEqualTo(3);
+        assertThat(rows("profiles")).isEqualTo(1);
+        assertThat(rows("profile_history")).isZero();
+        assertThat(rows("profile_phones")).isEqualTo(1);
+    }
+
+    private long register(String email) throws Exception {
+        String created = mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Soft\",\"email\":\"" + email + "\",\"password\":\"secret\","
+                                + "\"phones\":[\"+100\"]}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return ((Number) JsonPath.read(created, "$.id")).longValue();
+    }
+
+    private Integer rows(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Integer.class);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.users.controller;
+
+import com.example.users.model.Profile;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.example.users.service.ProfileService;
+import com.example.users.service.ProfileStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET /api/profiles/stats: counts after a reconciliation, and kept current by creates,
+ * updates and deletes without one, and a write that commits while a reconciliation runs
+ * counted once.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProfileStatisticsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private ProfileStatistics profileStatistics;
+
+    @Autowired
+    private ProfileService profileService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long anna;
+    private Long bob;
+
+    @BeforeEach
+    void seed() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+        anna = save("anna@example.com", bornYearsAgo(25), "Female");
+        bob = save("bob@example.com", bornYearsAgo(30), "Male");
+        save("carol@example.com", bornYearsAgo(45), "female");
+        save("dan@example.com", null, "Male");
+        // Written past the service, as the CSV import does; only a reconciliation sees these rows
+        profileStatistics.reconcile();
+    }
+
+    private Long save(String email, LocalDate dob, String sex) {
+        Profile profile = newProfile(email, dob, sex);
+        profile.setPassword("hash");
+        return profileRepository.save(profile).getId();
+    }
+
+    private static Profile newProfile(String email, LocalDate dob, String sex) {
+        Profile profile = new Profile();
+        profile.setName(email);
+        profile.setEmail(email);
+        profile.setDob(dob);
+        profile.setSex(sex);
+        return profile;
+    }
+
+    // One day past the birthday, so the age holds for the whole test run
+    private static LocalDate bornYearsAgo(int years) {
+        return LocalDate.now().minusYears(years).minusDays(1);
+    }
+
+    @Test
+    void countsBySexAndAgeGroup() throws Exception {
+        mockMvc.perform(get("/api/profiles/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(4))
+                .andExpect(jsonPath("$.bySex.Female").value(2))
+                .andExpect(jsonPath("$.bySex.Male").value(2))
+                .andExpect(jsonPath("$.byAgeGroup['25-34']").value(2))
+                .andExpect(jsonPath("$.byAgeGroup['45-54']").value(1))
+                .andExpect(jsonPath("$.byAgeGroup['18-24']").value(0))
+                .andExpect(jsonPath("$.byAgeGroup.unknown").value(1))
+                .andExpect(jsonPath("$.bySexAndAgeGroup.Female['45-54']").value(1))
+                .andExpect(jsonPath("$.bySexAndAgeGroup.Male.unknown").value(1));
+    }
+
+    @Test
+    void writesThroughTheApiMoveTheCountsWithoutAReconciliation() throws Exception {
+        mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Eve\",\"email\":\"eve@example.com\",\"dob\":\"" + bornYearsAgo(70)
+                                + "\",\"sex\":\"Female\",\"password\":\"secret\"}"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(patch("/api/profiles/{id}", anna).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"dob\":\"" + bornYearsAgo(20) + "\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/api/profiles/{id}", bob))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/profiles/stats"))
+                .andExpect(jsonPath("$.total").value(4))
+                .andExpect(jsonPath("$.bySex.Female").value(3))
+                .andExpect(jsonPath("$.bySex.Male").value(1))
+                .andExpect(jsonPath("$.byAgeGroup['18-24']").value(1))
+                .andExpect(jsonPath("$.byAgeGroup['25-34']").value(0))
+                .andExpect(jsonPath("$.byAgeGroup['65+']").value(1));
+
+        String incremental = mockMvc.perform(get("/api/profiles/stats")).andReturn().getResponse().getContentAsString();
+        profileStatistics.reconcile();
+        String recounted = mockMvc.perform(get("/api/profiles/stats")).andReturn().getResponse().getContentAsString();
+        assertThat(recounted.replaceAll("\"reconciledAt\":\"[^\"]*\"", ""))
+                .isEqualTo(incremental.replaceAll("\"reconciledAt\":\"[^\"]*\"", ""));
+    }
+
+    @Test
+    void aWriteCommittedBeforeTheRecountButReportedAfterItIsCountedOnce() throws Exception {
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = threads.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                // Holds the write between its commit and its statistics delta
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        committed.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+                profileService.saveOrUpdateProfileWithPassword(
+                        newProfile("frank@example.com", bornYearsAgo(40), "Male"), "secret");
+            }));
+            assertThat(committed.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // The recount's query would see the row, so it waits for the delta rather than adding it again
+            Future<?> recount = threads.submit(profileStatistics::reconcile);
+            Thread.sleep(200);
+            assertThat(recount.isDone()).isFalse();
+            release.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+            recount.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+
+        mockMvc.perform(get("/api/profiles/stats"))
+                .andExpect(jsonPath("$.total").value(5))
+                .andExpect(jsonPath("$.byAgeGroup['35-44']").value(1));
+    }
+
+    @Test
+    void rejectsADobThatIsNotADate() throws Exception {
+        mockMvc.perform(patch("/api/profiles/{id}", anna).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"dob\":\"17/04/1990\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/profiles/stats"))
+                .andExpect(jsonPath("$.byAgeGroup['25-34']").value(2));
+    }
+}
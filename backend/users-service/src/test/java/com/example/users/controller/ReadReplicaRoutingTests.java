@@ -0,0 +1,163 @@
+package com.example.users.controller;
+
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.EmailBloomFilter;
+import com.example.users.service.ProfileCache;
+import com.example.users.service.ProfileStatistics;
+import com.example.users.service.ReadYourWrites;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Two H2 databases stand in for the primary and a replica that never catches up, so which
+ * one a request used shows in what it finds.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "users.datasource.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+        "users.datasource.replica.username=sa",
+        "users.datasource.replica.driver-class-name=org.h2.Driver"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ReadReplicaRoutingTests {
+
+    private static final long REPLICA_ONLY_ID = 1_000_000;
+    private static final long PRIMARY_ONLY_ID = 2_000_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private ReadYourWrites readYourWrites;
+
+    @Autowired
+    private ProfileStatistics profileStatistics;
+
+    @Autowired
+    private EmailBloomFilter emailBloomFilter;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        replica = new JdbcTemplate(replicaDataSource);
+        // Hibernate only creates the schema on the primary; copy its tables (not its HTE_ temporary ones) to the replica
+        if (replica.queryForObject("select count(*) from information_schema.tables where table_name = 'PROFILES'",
+                Integer.class) == 0) {
+            List<String> script = new JdbcTemplate(primaryDataSource).queryForList("script nodata", String.class);
+            script.stream()
+                    .filter(statement -> !statement.startsWith("--") && !statement.startsWith("CREATE USER"))
+                    .filter(statement -> !statement.contains("\"HTE_"))
+                    .forEach(replica::execute);
+        }
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        for (String table : List.of("profile_phones", "profile_addresses", "profiles")) {
+            replica.update("delete from " + table);
+        }
+        profileCache.invalidateAll();
+        readYourWrites.clear();
+        replica.update(INSERT_PROFILE, REPLICA_ONLY_ID, "Replica Only", "replica@example.com");
+    }
+
+    private static final String INSERT_PROFILE = "insert into profiles"
+            + " (id, name, email, email_domain, dob, age, sex, password, update_count)"
+            + " values (?, ?, ?, 'example.com', date '1990-01-01', 0, 'Female', 'hash', 0)";
+
+    @Test
+    void readsGoToTheReplica() throws Exception {
+        mockMvc.perform(get("/api/profiles/{id}", REPLICA_ONLY_ID))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Replica Only"));
+        mockMvc.perform(get("/api/profiles/search").param("name", "Replica"))
+                .andExpect(jsonPath("$.items.length()").value(1));
+        // Except the statistics recount, which must see every write that has committed
+        profileStatistics.reconcile();
+        mockMvc.perform(get("/api/profiles/stats"))
+                .andExpect(jsonPath("$.total").value(0));
+    }
+
+    @Test
+    void emailFilterIsBuiltFromThePrimaryAndItsNegativesAreConfirmedThere() throws Exception {
+        emailBloomFilter.rebuild();
+        // Written by another instance after the rebuild, so this instance's filter lacks it
+        new JdbcTemplate(primaryDataSource).update(INSERT_PROFILE, PRIMARY_ONLY_ID, "Elsewhere", "elsewhere@example.com");
+
+        mockMvc.perform(get("/api/profiles/email/{email}", "elsewhere@example.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Elsewhere"));
+        assertThat(emailBloomFilter.mightContain("elsewhere@example.com")).isTrue();
+        // The replica's row was never on the primary, so the rebuild did not pick it up
+        assertThat(emailBloomFilter.mightContain("replica@example.com")).isFalse();
+        mockMvc.perform(get("/api/profiles/email/{email}", "replica@example.com"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void writesGoToThePrimaryAndTheWriterReadsThemBack() throws Exception {
+        String created = mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Written\",\"email\":\"written@example.com\",\"dob\":\"1990-01-01\","
+                                + "\"sex\":\"Male\",\"password\":\"secret\",\"phones\":[\"+100\"]}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        long id = Long.parseLong(created.replaceAll(".*\"id\":(\\d+).*", "$1"));
+        assertThat(new JdbcTemplate(primaryDataSource).queryForObject(
+                "select count(*) from profiles where id = ?", Integer.class, id)).isOne();
+        assertThat(replica.queryForObject("select count(*) from profiles where id = ?", Integer.class, id)).isZero();
+
+        // Within the read-your-writes window the profile is read from the primary
+        mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Renamed\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Renamed"));
+        mockMvc.perform(get("/api/profiles/email/{email}", "written@example.com"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/profiles/{id}/history", id))
+                .andExpect(jsonPath("$.items.length()").value(1));
+
+        // Once it has passed, reads go back to the replica, which never received the row
+        readYourWrites.clear();
+        profileCache.invalidateAll();
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.users.controller;
+
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.net.URI;
+
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Login hands out a session token, and with enforcement on the per-profile write endpoints
+ * accept nothing else.
+ */
+@SpringBootTest(properties = "users.session.enforce=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class SessionTokenTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @BeforeEach
+    void setUp() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+    }
+
+    @Test
+    void loginTokenAuthorisesChangesToItsOwnProfileOnly() throws Exception {
+        long id = register("owner@example.com");
+        long otherId = register("other@example.com");
+        String token = login("owner@example.com");
+
+        mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"No token\"}"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string(HttpHeaders.WWW_AUTHENTICATE, "Bearer"));
+        mockMvc.perform(patch("/api/profiles/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .content("{\"name\":\"Renamed\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Renamed"));
+        mockMvc.perform(delete("/api/profiles/{id}", otherId)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isForbidden());
+
+        // Reads stay open
+        mockMvc.perform(get("/api/profiles/{id}", otherId))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void tamperedTokenIsRejected() throws Exception {
+        long id = register("tamper@example.com");
+        String token = login("tamper@example.com");
+        // Point the token at another profile id without re-signing it
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + (id + 1) + "." + parts[2] + "." + parts[3];
+
+        mockMvc.perform(delete("/api/profiles/{id}", id + 1)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + forged))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(delete("/api/profiles/{id}", id)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void pathSpellingsThatReachTheSameHandlerAreChecked() throws Exception {
+        long id = register("spelling@example.com");
+        String digits = String.valueOf(id);
+        StringBuilder encoded = new StringBuilder();
+        for (char digit : digits.toCharArray()) {
+            encoded.append("%3").append(digit);
+        }
+
+        for (String path : new String[]{"/api/profiles/" + id + ";x=y", "/api/profiles/" + encoded,
+                "/api/profiles/" + id + ";"}) {
+            mockMvc.perform(patch(URI.create(path)).contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"No token\"}"))
+                    .andExpect(status().isUnauthorized());
+            mockMvc.perform(delete(URI.create(path)))
+                    .andExpect(status().isUnauthorized());
+        }
+        mockMvc.perform(post(URI.create("/api/profiles/" + encoded + "/verify-password"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"secret\"}"))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(get("/api/profiles/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Session"));
+        // The same spellings do reach the handler once the token is there
+        mockMvc.perform(patch(URI.create("/api/profiles/" + id + ";x=y")).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + login("spelling@example.com"))
+                        .content("{\"name\":\"Renamed\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Renamed"));
+    }
+
+    @Test
+    void batchUpdateNeedsATokenAndOnlyChangesItsProfile() throws Exception {
+        long id = register("batch-owner@example.com");
+        long otherId = register("batch-victim@example.com");
+        String body = "[" + batchItem(id, "batch-owner@example.com", "Owner") + ","
+                + batchItem(otherId, "batch-victim@example.com", "Taken over") + "]";
+
+        mockMvc.perform(put("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(put("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer not.a.valid.token")
+                        .content(body))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(put("/api/profiles/batch").contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + login("batch-owner@example.com"))
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].status", contains("UPDATED", "FORBIDDEN")));
+
+        mockMvc.perform(get("/api/profiles/{id}", id)).andExpect(jsonPath("$.name").value("Owner"));
+        mockMvc.perform(get("/api/profiles/{id}", otherId)).andExpect(jsonPath("$.name").value("Session"));
+        // The victim's password was not replaced either
+        login("batch-victim@example.com");
+    }
+
+    private static String batchItem(long id, String email, String name) {
+        return "{\"id\":" + id + ",\"name\":\"" + name + "\",\"email\":\"" + email
+                + "\",\"password\":\"changed\"}";
+    }
+
+    private long register(String email) throws Exception {
+        String created = mockMvc.perform(post("/api/profiles").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Session\",\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return ((Number) JsonPath.read(created, "$.id")).longValue();
+    }
+
+    private String login(String email) throws Exception {
+        MvcResult pending = mockMvc.perform(post("/api/profiles/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.expiresAt").exists())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(body, "$.token");
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.users.etl;
+
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.service.ProfileCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Loads the small export in src/test/resources/etl-fixture: quoted fields with commas,
+ * quotes and line breaks, ';'-separated phones, an id above the int range, and child rows
+ * of profiles that are not in profiles.csv, and blank or repeated addresses. The chunk size
+ * is small so each file is written in several chunks.
+ */
+@SpringBootTest(properties = "users.import.chunk-size=2")
+@ActiveProfiles("h2")
+class CsvImportServiceTests {
+
+    private static final Path FIXTURE = Paths.get("src/test/resources/etl-fixture");
+    private static final long LARGE_ID = 3_000_000_000L;
+
+    @Autowired
+    private CsvImportService csvImportService;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private ProfileCache profileCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clean() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+        profileCache.invalidateAll();
+    }
+
+    @Test
+    void importsEachFileAndReportsTheSkippedRows() {
+        List<CsvImportService.FileReport> reports = csvImportService.importDirectory(FIXTURE, false, true);
+
+        assertThat(reports)
+                .extracting(CsvImportService.FileReport::file, CsvImportService.FileReport::rows,
+                        CsvImportService.FileReport::inserted, CsvImportService.FileReport::skipped)
+                .containsExactly(
+                        tuple("profiles.csv", 3L, 3L, 0L),
+                        // Profile 1's row carries two distinct phones; profile 99 does not exist
+                        tuple("profile_phones.csv", 3L, 3L, 1L),
+                        // Profile 42 does not exist, one address repeats and one is blank
+                        tuple("profile_addresses.csv", 6L, 3L, 3L),
+                        tuple("profile_history.csv", 3L, 2L, 1L));
+        assertImportedRows();
+    }
+
+    @Test
+    void parallelImportLoadsTheSameRows() {
+        csvImportService.importDirectory(FIXTURE, true, true);
+
+        assertImportedRows();
+    }
+
+    private void assertImportedRows() {
+        assertThat(jdbcTemplate.queryForList("select id from profiles order by id", Long.class))
+                .containsExactly(1L, 2L, LARGE_ID);
+        assertThat(jdbcTemplate.queryForObject("select dob from profiles where id = 1", Date.class).toLocalDate())
+                .isEqualTo(LocalDate.of(1953, 2, 24));
+        assertThat(jdbcTemplate.queryForObject("select dob from profiles where id = 2", Date.class)).isNull();
+        assertThat(jdbcTemplate.queryForObject("select created_at from profiles where id = 1", Timestamp.class))
+                .isEqualTo(Timestamp.valueOf(LocalDateTime.of(2023, 9, 24, 0, 13, 33, 89_288_000)));
+
+        assertThat(jdbcTemplate.queryForList("select phone from profile_phones where profile_id = 1", String.class))
+                .containsExactlyInAnyOrder("+444316890158", "+33441999413");
+        assertThat(jdbcTemplate.queryForList("select phone from profile_phones where profile_id = ?", String.class,
+                LARGE_ID)).containsExactly("+61950319558");
+
+        assertThat(jdbcTemplate.queryForList("select address from profile_addresses where profile_id = 1", String.class))
+                .containsExactlyInAnyOrder("7852 Webb Ville Suite 460, Michelleside, AS 81505",
+                        "5112 Patrick Ranch, Pamelaville, KY 44190");
+        assertThat(jdbcTemplate.queryForList("select address from profile_addresses where profile_id = ?", String.class,
+                LARGE_ID)).containsExactly("The \"Old Mill\"\nUnit 4, Riverside");
+
+        assertThat(jdbcTemplate.queryForList("select profile_id from profile_history order by id", Long.class))
+                .containsExactly(1L, LARGE_ID);
+        assertThat(jdbcTemplate.queryForObject("select previous_values from profile_history where id = 1", String.class))
+                .contains("\"name\": \"Ada Old\"");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from profile_phones where profile_id not in"
+                + " (select id from profiles)", Long.class)).isZero();
+    }
+}
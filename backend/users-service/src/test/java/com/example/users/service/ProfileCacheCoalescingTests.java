@@ -0,0 +1,114 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Holds a cache miss open with a latch and checks who queries the database while it runs.
+ */
+class ProfileCacheCoalescingTests {
+
+    private static final int CALLERS = 8;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProfileCache profileCache;
+    private ExecutorService executor;
+    private final AtomicInteger queries = new AtomicInteger();
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        profileCache = new ProfileCache(100, Duration.ofMinutes(1), meterRegistry);
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesShareOneQuery() throws Exception {
+        Future<Optional<Profile>> leader = executor.submit(() -> profileCache.getById(7L, this::slowQuery));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        List<Future<Optional<Profile>>> joiners = new ArrayList<>();
+        for (int i = 1; i < CALLERS; i++) {
+            joiners.add(executor.submit(() -> profileCache.getById(7L, this::slowQuery)));
+        }
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        Profile loaded = leader.get(5, TimeUnit.SECONDS).orElseThrow();
+        for (Future<Optional<Profile>> joiner : joiners) {
+            Profile shared = joiner.get(5, TimeUnit.SECONDS).orElseThrow();
+            assertThat(shared.getEmail()).isEqualTo("seven@example.com");
+            // Everyone gets their own copy to mutate
+            assertThat(shared).isNotSameAs(loaded);
+        }
+        assertThat(queries).hasValue(1);
+        assertThat(meterRegistry.get("users.profile_cache.coalescing_ratio").gauge().value())
+                .isEqualTo((CALLERS - 1) / (double) CALLERS);
+    }
+
+    @Test
+    void missesAfterAnInvalidationDoNotJoinTheOlderLoad() throws Exception {
+        Future<Optional<Profile>> stale = executor.submit(() -> profileCache.getById(7L, this::slowQuery));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        profileCache.invalidate(7L);
+
+        Optional<Profile> fresh = profileCache.getById(7L, id -> {
+            queries.incrementAndGet();
+            return Optional.of(profile(id));
+        });
+        release.countDown();
+
+        assertThat(fresh).isPresent();
+        assertThat(stale.get(5, TimeUnit.SECONDS)).isPresent();
+        assertThat(queries).hasValue(2);
+    }
+
+    private Optional<Profile> slowQuery(Long id) {
+        queries.incrementAndGet();
+        loading.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Optional.of(profile(id));
+    }
+
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("users.profile_cache.loads").tag("outcome", "coalesced").counter().count() < expected
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Profile profile(Long id) {
+        Profile profile = new Profile();
+        profile.setId(id);
+        profile.setName("Seven");
+        profile.setEmail("seven@example.com");
+        return profile;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import com.example.users.model.ProfileHistory;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.example.users.util.HistoryIncompleteException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Walks a profile through a series of updates and checks that every intermediate version
+ * can be rebuilt from the delta-encoded history, across checkpoints.
+ */
+@SpringBootTest(properties = "users.history.checkpoint-interval=3")
+@ActiveProfiles("h2")
+class ProfileHistoryVersionTests {
+
+    @Autowired
+    private ProfileService profileService;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @BeforeEach
+    void clean() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+    }
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void rebuildsEveryVersion() {
+        // One transaction per step, like the open session of a web request
+        TransactionTemplate request = new TransactionTemplate(transactionManager);
+        Profile profile = new Profile();
+        profile.setName("Version 0");
+        profile.setEmail("versions@example.com");
+        profile.setDob(LocalDate.of(1990, 1, 1));
+        profile.setSex("Female");
+        profile.setPassword("hash");
+        profile.setPhones(new TreeSet<>(List.of("+100")));
+        profile.setAddresses(new TreeSet<>(List.of("1 First Street")));
+        Long id = profileRepository.save(profile).getId();
+
+        List<Profile> versions = new ArrayList<>();
+        versions.add(copyOf(profile));
+        for (int version = 1; version <= 7; version++) {
+            Profile update = new Profile();
+            // Only the name changes on odd versions, only the phones on even ones
+            update.setName(version % 2 == 1 ? "Version " + version : versions.get(version - 1).getName());
+            update.setEmail("versions@example.com");
+            update.setDob(LocalDate.of(1990, 1, 1));
+            update.setSex("Female");
+            update.setPhones(new TreeSet<>(version % 2 == 0
+                    ? List.of("+100", "+" + version) : versions.get(version - 1).getPhones()));
+            update.setAddresses(new TreeSet<>(List.of("1 First Street")));
+            request.executeWithoutResult(status -> profileService.updateProfileWithHistory(
+                    profileService.getProfileById(id).orElseThrow(), update, null));
+            versions.add(copyOf(update));
+        }
+
+        for (int version = 0; version <= 7; version++) {
+            int at = version;
+            Profile rebuilt = request.execute(status -> profileService.getProfileAtVersion(id, at).orElseThrow());
+            assertThat(rebuilt.getName()).as("name at %d", version).isEqualTo(versions.get(version).getName());
+            assertThat(rebuilt.getPhones()).as("phones at %d", version).isEqualTo(versions.get(version).getPhones());
+            assertThat(rebuilt.getAddresses()).containsExactly("1 First Street");
+        }
+        Optional<Profile> beyondLatest = request.execute(status -> profileService.getProfileAtVersion(id, 8));
+        assertThat(beyondLatest).isEmpty();
+
+        List<ProfileHistory> history = profileHistoryRepository.findByProfileId(id);
+        assertThat(history).hasSize(7).allSatisfy(entry -> {
+            assertThat(entry.getCheckpoint()).isEqualTo(entry.getUpdateCount() % 3 == 0);
+            assertThat(entry.getEmail()).isNull();
+            assertThat(entry.getPasswordHash()).isNull();
+            if (!entry.getCheckpoint()) {
+                assertThat(entry.getPreviousValues()).doesNotContain("email");
+            }
+        });
+    }
+
+    @Test
+    void rebuildsVersionsFromRowsInTheLegacySnapshotLayout() {
+        TransactionTemplate request = new TransactionTemplate(transactionManager);
+        Profile profile = new Profile();
+        profile.setName("Before");
+        profile.setEmail("legacy@example.com");
+        profile.setPassword("hash");
+        Profile saved = profileRepository.save(profile);
+        saved.setName("Current");
+        saved.setPhones(new TreeSet<>(List.of("+1 555 0200")));
+        saved = profileRepository.save(saved);
+        assertThat(saved.getUpdateCount()).isEqualTo(1);
+
+        // Exactly what Profile.getCurrentValuesAsJson() stored for version 0 before the upgrade:
+        // String.format with the name unescaped and the lists as List.toString()
+        List<String> phones = List.of("+1 555 0100", "+1 555 0101");
+        List<String> addresses = List.of("1 Old Road");
+        String legacy = String.format("{\"name\":\"%s\",\"email\":\"%s\",\"sex\":\"%s\",\"age\":%d,\"dob\":\"%s\",\"phones\":%s,\"addresses\":%s}",
+                "Jo \"JJ\" O'Brien", "legacy@example.com", null, 41, "1984-02-29", phones.toString(), addresses.toString());
+        ProfileHistory row = new ProfileHistory();
+        row.setProfile(saved);
+        row.setPreviousValues(legacy);
+        row.setUpdateCount(1);
+        row.setUpdatedAt(LocalDate.now());
+        profileHistoryRepository.save(row);
+
+        Long id = saved.getId();
+        Profile rebuilt = request.execute(status -> profileService.getProfileAtVersion(id, 0).orElseThrow());
+        assertThat(rebuilt.getName()).isEqualTo("Jo \"JJ\" O'Brien");
+        assertThat(rebuilt.getSex()).isNull();
+        assertThat(rebuilt.getAge()).isEqualTo(41);
+        assertThat(rebuilt.getDob()).isEqualTo(LocalDate.of(1984, 2, 29));
+        assertThat(rebuilt.getPhones()).containsExactlyInAnyOrder("+1 555 0100", "+1 555 0101");
+        assertThat(rebuilt.getAddresses()).containsExactly("1 Old Road");
+    }
+
+    @Test
+    void versionsBelowAMissingEntryAreNotRebuilt() {
+        TransactionTemplate request = new TransactionTemplate(transactionManager);
+        Profile profile = new Profile();
+        profile.setName("Version 0");
+        profile.setEmail("gap@example.com");
+        profile.setPassword("hash");
+        Long id = profileRepository.save(profile).getId();
+        for (int version = 1; version <= 4; version++) {
+            Profile update = new Profile();
+            update.setName("Version " + version);
+            update.setEmail("gap@example.com");
+            request.executeWithoutResult(status -> profileService.updateProfileWithHistory(
+                    profileService.getProfileById(id).orElseThrow(), update, null));
+        }
+        profileHistoryRepository.findByProfileId(id).stream()
+                .filter(entry -> entry.getUpdateCount() == 2)
+                .forEach(profileHistoryRepository::delete);
+
+        // Version 3 is a checkpoint, so 2 and above only need entries that are still there
+        assertThat(request.execute(status -> profileService.getProfileAtVersion(id, 2)).orElseThrow().getName())
+                .isEqualTo("Version 2");
+        for (int version = 0; version <= 1; version++) {
+            int at = version;
+            assertThatThrownBy(() -> request.execute(status -> profileService.getProfileAtVersion(id, at)))
+                    .isInstanceOf(HistoryIncompleteException.class);
+        }
+    }
+
+    private static Profile copyOf(Profile source) {
+        Profile copy = new Profile();
+        copy.setName(source.getName());
+        copy.setPhones(new TreeSet<>(source.getPhones()));
+        return copy;
+    }
+}
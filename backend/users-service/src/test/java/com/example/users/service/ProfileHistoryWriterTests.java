@@ -0,0 +1,225 @@
+package com.example.users.service;
+
+import com.example.users.model.Profile;
+import com.example.users.model.ProfileHistory;
+import com.example.users.repository.ProfileHistoryRepository;
+import com.example.users.repository.ProfileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Drives stand-alone write-behind writers against the test database. Each writer is started
+ * only once its entries are queued, so what it does with them is deterministic, and stopped
+ * to wait until the queue is drained. The application's own writer stays in sync mode.
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class ProfileHistoryWriterTests {
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private ProfileHistoryRepository profileHistoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @TempDir
+    private Path journalDir;
+
+    private final List<ProfileHistoryWriter> writers = new ArrayList<>();
+
+    @BeforeEach
+    void clean() {
+        profileHistoryRepository.deleteAll();
+        profileRepository.deleteAll();
+    }
+
+    @AfterEach
+    void stopWriters() throws InterruptedException {
+        for (ProfileHistoryWriter writer : writers) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void queuedEntriesAreInsertedAsOneBatch() throws InterruptedException {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ProfileHistoryWriter writer = writer(ProfileHistoryWriter.WriteMode.ASYNC, meterRegistry);
+        Profile first = profile("batch1@example.com");
+        Profile second = profile("batch2@example.com");
+        writer.write(List.of(entry(first, 1), entry(second, 1), entry(first, 2)));
+        writer.write(List.of(entry(second, 2)));
+
+        writer.start();
+        writer.stop();
+
+        assertThat(profileHistoryRepository.findByProfileId(first.getId())).hasSize(2);
+        assertThat(profileHistoryRepository.findByProfileId(second.getId())).hasSize(2);
+        assertThat(meterRegistry.get("users.history.write_behind.batch_size").summary().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("users.history.write_behind.batch_size").summary().max()).isEqualTo(4);
+    }
+
+    @Test
+    void rowTheDatabaseRejectsIsDroppedAndTheRestOfTheBatchStored() throws InterruptedException {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ProfileHistoryWriter writer = writer(ProfileHistoryWriter.WriteMode.ASYNC, meterRegistry);
+        Profile profile = profile("drop@example.com");
+        ProfileHistory tooLong = entry(profile, 2);
+        tooLong.setName("x".repeat(300));
+        writer.write(List.of(entry(profile, 1), tooLong, entry(profile, 3)));
+
+        writer.start();
+        writer.stop();
+
+        assertThat(profileHistoryRepository.findByProfileId(profile.getId()))
+                .extracting(ProfileHistory::getUpdateCount)
+                .containsExactlyInAnyOrder(1, 3);
+        assertThat(meterRegistry.get("users.history.write_behind.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void discardDropsTheQueuedEntriesOfADeletedProfile() throws InterruptedException {
+        ProfileHistoryWriter writer = writer(ProfileHistoryWriter.WriteMode.ASYNC, new SimpleMeterRegistry());
+        Profile deleted = profile("discarded@example.com");
+        Profile kept = profile("kept@example.com");
+        writer.write(List.of(entry(deleted, 1), entry(kept, 1), entry(deleted, 2)));
+
+        writer.discard(deleted.getId());
+        writer.start();
+        writer.stop();
+
+        assertThat(profileHistoryRepository.findByProfileId(deleted.getId())).isEmpty();
+        assertThat(profileHistoryRepository.findByProfileId(kept.getId())).hasSize(1);
+    }
+
+    @Test
+    void journalEntriesLeftByACrashAreReplayedOnStart() throws InterruptedException, IOException {
+        Profile profile = profile("replay@example.com", 3);
+        Profile other = profile("replay-other@example.com", 1);
+        profileHistoryRepository.save(entry(profile, 1));
+
+        // What a process that died before its writer caught up leaves behind
+        HistoryJournal crashed = new HistoryJournal(journalDir, 512, objectMapper);
+        crashed.recover();
+        // Already stored before the crash
+        crashed.append(ProfileHistoryWriter.PendingHistory.of(entry(profile, 1)));
+        crashed.append(ProfileHistoryWriter.PendingHistory.of(entry(profile, 2)));
+        crashed.append(ProfileHistoryWriter.PendingHistory.of(entry(profile, 3)));
+        // Rolled back after it was journaled
+        long aborted = crashed.append(ProfileHistoryWriter.PendingHistory.of(entry(other, 2))).sequence();
+        crashed.abort(List.of(aborted));
+        // Commit failed before the abort could be recorded: the profile never reached version 2
+        crashed.append(ProfileHistoryWriter.PendingHistory.of(entry(other, 2)));
+        crashed.append(ProfileHistoryWriter.PendingHistory.of(entry(other, 1)));
+        crashed.close();
+        assertThat(segments()).hasSizeGreaterThan(1);
+
+        ProfileHistoryWriter writer = writer(ProfileHistoryWriter.WriteMode.JOURNALED, new SimpleMeterRegistry());
+        writer.start();
+        writer.stop();
+
+        assertThat(profileHistoryRepository.findByProfileId(profile.getId()))
+                .extracting(ProfileHistory::getUpdateCount)
+                .containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(profileHistoryRepository.findByProfileId(other.getId()))
+                .extracting(ProfileHistory::getUpdateCount)
+                .containsExactly(1);
+        // Everything was stored or skipped, so no segment is kept
+        assertThat(segments()).isEmpty();
+    }
+
+    @Test
+    void journaledEntriesOfARolledBackUpdateAreAbortedAndNotReplayed() throws InterruptedException, IOException {
+        ProfileHistoryWriter writer = writer(ProfileHistoryWriter.WriteMode.JOURNALED, new SimpleMeterRegistry());
+        writer.start();
+        Profile profile = profile("rollback@example.com");
+
+        assertThatThrownBy(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            writer.write(List.of(entry(profile, 1)));
+            // Fails the commit after the writer has journaled its entry
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("commit failed");
+                }
+            });
+        })).hasMessage("commit failed");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                writer.write(List.of(entry(profile, 2))));
+        writer.stop();
+
+        assertThat(profileHistoryRepository.findByProfileId(profile.getId()))
+                .extracting(ProfileHistory::getUpdateCount)
+                .containsExactly(2);
+        assertThat(segments()).isEmpty();
+    }
+
+    private ProfileHistoryWriter writer(ProfileHistoryWriter.WriteMode mode, MeterRegistry meterRegistry) {
+        ProfileHistoryWriter writer = new ProfileHistoryWriter(profileHistoryRepository, profileRepository,
+                transactionManager, objectMapper, meterRegistry, mode, 100, 50, 2, journalDir, 512);
+        // Injects the entity manager
+        beanFactory.autowireBean(writer);
+        writers.add(writer);
+        return writer;
+    }
+
+    private Profile profile(String email) {
+        return profile(email, 0);
+    }
+
+    private Profile profile(String email, int updateCount) {
+        Profile profile = new Profile();
+        profile.setName("History");
+        profile.setEmail(email);
+        profile.setPassword("hash");
+        Profile saved = profileRepository.save(profile);
+        for (int i = 0; i < updateCount; i++) {
+            saved.setName("History " + i);
+            saved = profileRepository.save(saved);
+        }
+        return saved;
+    }
+
+    private static ProfileHistory entry(Profile profile, int updateCount) {
+        ProfileHistory history = new ProfileHistory(profile, "{}", true, updateCount);
+        history.setName("History");
+        return history;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.users.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Signing, expiry and key rotation of session tokens.
+ */
+class SessionTokensTests {
+
+    private static final String OLD_KEY = "k1:" + secret('a');
+    private static final String NEW_KEY = "k2:" + secret('b');
+
+    @Test
+    void tokenNamesTheProfileUntilItExpires() {
+        SessionTokens tokens = tokens(OLD_KEY);
+
+        SessionTokens.Issued issued = tokens.issue(42L);
+        assertThat(issued.token()).startsWith("k1.42.");
+        assertThat(tokens.verify(issued.token())).contains(42L);
+
+        assertThat(tokens.verify(tokens.issue(42L, Instant.now().minusSeconds(1)).token())).isEmpty();
+        assertThat(tokens.verify("k1.42")).isEmpty();
+        assertThat(tokens.verify(issued.token() + "x")).isEmpty();
+    }
+
+    @Test
+    void rotatedKeysKeepVerifyingUntilRemoved() {
+        String signedWithOldKey = tokens(OLD_KEY).issue(7L).token();
+
+        // New key in front: it signs, the old one still verifies
+        SessionTokens rotated = tokens(NEW_KEY + "," + OLD_KEY);
+        assertThat(rotated.issue(7L).token()).startsWith("k2.");
+        assertThat(rotated.verify(signedWithOldKey)).contains(7L);
+
+        assertThat(tokens(NEW_KEY).verify(signedWithOldKey)).isEmpty();
+    }
+
+    @Test
+    void shortKeysAreRefused() {
+        assertThatThrownBy(() -> tokens("k1:" + Base64.getEncoder().encodeToString(new byte[16])))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static SessionTokens tokens(String keys) {
+        return new SessionTokens(keys, Duration.ofHours(1), new SimpleMeterRegistry());
+    }
+
+    private static String secret(char fill) {
+        return Base64.getEncoder().encodeToString(String.valueOf(fill).repeat(32).getBytes());
+    }
+}
@@ -7,6 +7,8 @@ export type LoginResponse = {
   profileId?: number;
   name?: string;
   email?: string;
+  token?: string;         // session token for Authorization: Bearer
+  expiresAt?: string;     // ISO instant the token stops working
 };
 
 // Registration: only email + password required; everything else optional
@@ -45,9 +47,9 @@ export type ProfileResponse = {
 
 const API_BASE = process.env.NEXT_PUBLIC_API_BASE || "";
 
-// --- session (since backend returns no JWT) ---
+// --- session (login returns an HMAC-signed token the backend checks on updates) ---
 const SESSION_KEY = "users_frontend_session";
-export type SessionInfo = { profileId: number; email: string; name?: string };
+export type SessionInfo = { profileId: number; email: string; name?: string; token?: string; expiresAt?: string };
 
 export function setSession(s: SessionInfo) {
   if (typeof window !== "undefined") localStorage.setItem(SESSION_KEY, JSON.stringify(s));
@@ -61,19 +63,37 @@ export function clearSession() {
   if (typeof window !== "undefined") localStorage.removeItem(SESSION_KEY);
 }
 
+// Authorization header for the stored session, if it has an unexpired token
+function authHeaders(): Record<string, string> {
+  const s = getSession();
+  if (!s?.token) return {};
+  if (s.expiresAt && Date.parse(s.expiresAt) <= Date.now()) return {};
+  return { Authorization: `Bearer ${s.token}` };
+}
+
 // --- API calls matching your Spring controllers ---
 
+// loggedIn = false: the profile exists but the follow-up login did not go through
+export type RegisterResult = { profile: ProfileResponse; loggedIn: boolean };
+
 // REGISTER  POST /api/profiles  (email/password required; others optional)
-export async function apiRegisterProfile(body: RegisterPayload): Promise<ProfileResponse> {
+export async function apiRegisterProfile(body: RegisterPayload): Promise<RegisterResult> {
   const res = await fetch(`${API_BASE}/api/profiles`, {
     method: "POST",
     headers: { "Content-Type": "application/json" },
     body: JSON.stringify(body),
   });
   if (!res.ok) throw new Error((await safeText(res)) || `Register failed (${res.status})`);
-  const data = await res.json();
-  setSession({ profileId: data.id, email: data.email, name: data.name });
-  return normalizeProfileResponse(data);
+  const profile = normalizeProfileResponse(await res.json());
+  // Log straight in for a session token. Best effort: the account exists either way, and the
+  // login can fail for reasons of its own (throttled, or another instance not seeing the new
+  // row yet), so the caller sends the user to the login form instead of reporting a failure
+  try {
+    await apiLogin({ email: body.email, password: body.password });
+    return { profile, loggedIn: true };
+  } catch {
+    return { profile, loggedIn: false };
+  }
 }
 
 // LOGIN  POST /api/profiles/login
@@ -90,7 +110,13 @@ export async function apiLogin(body: LoginRequest): Promise<LoginResponse> {
   const data = (await res.json()) as LoginResponse;
   if (!data.success || !data.profileId || !data.email)
     throw new Error(data.message || "Invalid login response");
-  setSession({ profileId: data.profileId, email: data.email, name: data.name });
+  setSession({
+    profileId: data.profileId,
+    email: data.email,
+    name: data.name,
+    token: data.token,
+    expiresAt: data.expiresAt,
+  });
   return data;
 }
 
@@ -105,12 +131,12 @@ export async function apiGetProfileById(id: number): Promise<ProfileResponse> {
 export async function apiUpdateProfile(id: number, body: ProfileUpdatePayload): Promise<ProfileResponse> {
   const res = await fetch(`${API_BASE}/api/profiles/${id}`, {
     method: "PUT",
-    headers: { "Content-Type": "application/json" },
+    headers: { "Content-Type": "application/json", ...authHeaders() },
     body: JSON.stringify(body),
   });
   if (!res.ok) throw new Error((await safeText(res)) || `Update failed (${res.status})`);
   const data = await res.json();
-  setSession({ profileId: data.id, email: data.email, name: data.name });
+  setSession({ ...getSession(), profileId: data.id, email: data.email, name: data.name });
   return normalizeProfileResponse(data);
 }
 
@@ -118,7 +144,7 @@ export async function apiUpdateProfile(id: number, body: ProfileUpdatePayload):
 export async function apiVerifyPassword(id: number, password: string): Promise<{ matches: boolean }> {
   const res = await fetch(`${API_BASE}/api/profiles/${id}/verify-password`, {
     method: "POST",
-    headers: { "Content-Type": "application/json" },
+    headers: { "Content-Type": "application/json", ...authHeaders() },
     body: JSON.stringify({ password }),
   });
   if (!res.ok) throw new Error((await safeText(res)) || `Verify failed (${res.status})`);
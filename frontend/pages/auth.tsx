@@ -22,12 +22,14 @@ export default function AuthPage() {
   const [addressItems, setAddressItems] = useState<AddressItem[]>([{ address: "", pincode: "" }]);
 
   const [error, setError] = useState<string>();
+  const [notice, setNotice] = useState<string>();
   const [loading, setLoading] = useState(false);
   const router = useRouter();
 
   async function onSubmit(e: FormEvent) {
     e.preventDefault();
     setError(undefined);
+    setNotice(undefined);
     setLoading(true);
     try {
       if (mode === "register") {
@@ -52,8 +54,13 @@ export default function AuthPage() {
         const mergedAddresses = addressItems.map(encodeAddress).filter(Boolean);
         if (mergedAddresses.length) payload.addresses = mergedAddresses;
 
-        await apiRegisterProfile(payload);
-        router.push("/profile");
+        const { loggedIn } = await apiRegisterProfile(payload);
+        if (loggedIn) {
+          router.push("/profile");
+        } else {
+          setMode("login");
+          setNotice("Account created. Please log in.");
+        }
       } else {
         await apiLogin({ email: email.trim(), password });
         router.push("/profile");
@@ -122,6 +129,7 @@ export default function AuthPage() {
           </>
         )}
 
+        {notice && <div className="small">{notice}</div>}
         {error && <div className="alert">{error}</div>}
         <div className="toolbar">
           <button type="submit" disabled={loading}>